@@ -0,0 +1,33 @@
+package com.example.api;
+
+import org.pf4j.ExtensionPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接读取脚本变量的插件接口，与 HandlerService 并存。
+ * 参数不再先组装成一个 JsonNode，结果也不必包装成对象。
+ */
+public interface ArgumentHandlerService extends ExtensionPoint {
+
+    String getName();
+
+    /**
+     * @return 结果名到结果值，值可以是 JsonNode 或可序列化的对象。
+     *         只有一个结果时直接赋给脚本中的目标变量，有多个时以结果名为字段组成一个对象
+     */
+    Map<String, ?> handle(PluginArguments arguments) throws Exception;
+
+    /**
+     * 一次处理多次调用的参数，返回与之一一对应的结果。覆盖后引擎会把同一函数上并发的调用合并为一次调用。
+     */
+    default List<Map<String, ?>> handleBatch(List<PluginArguments> batch) throws Exception {
+        List<Map<String, ?>> results = new ArrayList<>(batch.size());
+        for (PluginArguments arguments : batch) {
+            results.add(handle(arguments));
+        }
+        return results;
+    }
+}
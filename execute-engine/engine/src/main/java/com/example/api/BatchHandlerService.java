@@ -0,0 +1,17 @@
+package com.example.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * 可以一次处理多组输入的 HandlerService。引擎把同一函数上并发的多次调用合并为一次 handleBatch，
+ * 只实现 HandlerService 的插件仍逐次调用 handle。
+ */
+public interface BatchHandlerService extends HandlerService {
+
+    /**
+     * @return 与 inputs 一一对应的结果，每个结果的约定与 handle 相同
+     */
+    List<JsonNode> handleBatch(List<JsonNode> inputs) throws Exception;
+}
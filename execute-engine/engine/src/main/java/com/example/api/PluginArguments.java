@@ -0,0 +1,36 @@
+package com.example.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * 插件调用的参数，按脚本中的参数顺序和参数名访问执行上下文中的变量，不复制变量的值。
+ * 只在本次调用期间有效。返回的 JsonNode 与本次执行中脚本的变量是同一个对象：这些节点只属于本次执行，
+ * 来自结果缓存或合并请求的值在放进执行上下文之前已经复制，不会与其他请求共享；
+ * 修改它们会改变本次执行中后续语句看到的变量，因此插件不应修改。
+ * 纯函数（@Pure）的参数同时是结果缓存的键，调用期间不能修改。
+ */
+public interface PluginArguments {
+
+    int size();
+
+    String name(int index);
+
+    JsonNode get(int index);
+
+    /**
+     * @return 没有该参数时返回 null
+     */
+    JsonNode get(String name);
+
+    /**
+     * 把一个参数绑定为指定类型的对象。
+     */
+    <T> T get(String name, Class<T> type) throws IOException;
+
+    /**
+     * 以参数名为字段名，把全部参数绑定为指定类型的对象。
+     */
+    <T> T bind(Class<T> type) throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.example.api;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在插件函数的实现类上，表示相同的参数总是得到相同的结果且没有副作用。
+ * 引擎会缓存这类函数的结果，参数相同时不再调用插件，插件更新后缓存随之失效。
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Pure {
+}
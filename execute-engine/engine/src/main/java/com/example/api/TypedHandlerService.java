@@ -0,0 +1,31 @@
+package com.example.api;
+
+import org.pf4j.ExtensionPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 声明输入类型的插件接口：引擎以参数名为字段名把参数绑定为 getInputType 的对象后调用 handle。
+ * 结果的约定与 ArgumentHandlerService 相同。
+ */
+public interface TypedHandlerService<I> extends ExtensionPoint {
+
+    String getName();
+
+    Class<I> getInputType();
+
+    Map<String, ?> handle(I input) throws Exception;
+
+    /**
+     * 见 ArgumentHandlerService.handleBatch。
+     */
+    default List<Map<String, ?>> handleBatch(List<I> inputs) throws Exception {
+        List<Map<String, ?>> results = new ArrayList<>(inputs.size());
+        for (I input : inputs) {
+            results.add(handle(input));
+        }
+        return results;
+    }
+}
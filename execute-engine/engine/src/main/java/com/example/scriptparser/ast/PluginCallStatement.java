@@ -6,12 +6,15 @@ public class PluginCallStatement implements Statement {
     private final String variableName;
     private final String pluginName;
     private final String functionName;
+    private final String qualifiedName;
     private final List<String> arguments;
 
     public PluginCallStatement(String variableName, String pluginName, String functionName, List<String> arguments) {
         this.variableName = variableName;
         this.pluginName = pluginName;
         this.functionName = functionName;
+        // 插件函数索引的键，解析时拼好，执行时不再拼接
+        this.qualifiedName = pluginName + ":" + functionName;
         this.arguments = List.copyOf(arguments);
     }
 
@@ -27,6 +30,10 @@ public class PluginCallStatement implements Statement {
         return functionName;
     }
 
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
     public List<String> getArguments() {
         return arguments;
     }
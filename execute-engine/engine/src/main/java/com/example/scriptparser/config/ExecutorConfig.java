@@ -0,0 +1,70 @@
+package com.example.scriptparser.config;
+
+import com.example.scriptparser.service.PinningMonitor;
+import com.example.scriptparser.util.VirtualThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${engine.execution.parallelism:64}")
+    private int parallelism;
+
+    // 与 Spring Boot 的 Tomcat 虚拟线程开关保持一致
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${engine.virtual.pinning-threshold-ms:20}")
+    private long pinningThresholdMs;
+
+    @Value("${engine.reactive.blocking-threads:64}")
+    private int blockingThreads;
+
+    @Value("${engine.reactive.blocking-queue:100000}")
+    private int blockingQueue;
+
+    // 并行执行模式下用于发出gql查询和插件调用的线程池
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService statementExecutor() {
+        if (virtualThreads) {
+            if (VirtualThreads.isSupported()) {
+                return VirtualThreads.newPerTaskExecutor();
+            }
+            System.err.println("spring.threads.virtual.enabled is set but virtual threads are not available on "
+                    + Runtime.version() + ", using platform thread pool");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "statement-exec-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(parallelism, threadFactory);
+    }
+
+    // 响应式执行路径上的插件调用在这里阻塞，线程数有上限，超出的任务排队，队列满时执行失败
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler() {
+        return Schedulers.newBoundedElastic(blockingThreads, blockingQueue, "reactive-blocking", 60, true);
+    }
+
+    // 虚拟线程模式下记录插件等代码中 synchronized 造成的载体线程固定
+    @Bean(destroyMethod = "close")
+    public PinningMonitor pinningMonitor() {
+        PinningMonitor monitor = new PinningMonitor(Duration.ofMillis(pinningThresholdMs));
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            monitor.start();
+        }
+        return monitor;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.scriptparser.config;
+
+import com.example.scriptparser.service.GatewayClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class GatewayClientConfig {
+
+    // 逗号分隔的多个网关副本，未配置时使用单个 engine.gateway.endpoint
+    @Value("${engine.gateway.endpoints:${engine.gateway.endpoint:http://192.168.0.204:4000/graphql}}")
+    private List<String> endpoints;
+
+    // http1 | http2
+    @Value("${engine.gateway.http-version:http1}")
+    private String httpVersion;
+
+    @Value("${engine.gateway.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${engine.gateway.connect-timeout-ms:2000}")
+    private long connectTimeoutMillis;
+
+    @Value("${engine.gateway.read-timeout-ms:10000}")
+    private long readTimeoutMillis;
+
+    @Value("${engine.gateway.total-timeout-ms:30000}")
+    private long totalTimeoutMillis;
+
+    @Value("${engine.gateway.pool-timeout-ms:2000}")
+    private long poolTimeoutMillis;
+
+    @Value("${engine.gateway.keep-alive-ms:60000}")
+    private long keepAliveMillis;
+
+    @Value("${engine.gateway.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${engine.gateway.eject-ms:10000}")
+    private long ejectMillis;
+
+    @Value("${engine.gateway.health-check-interval-ms:5000}")
+    private long healthCheckIntervalMillis;
+
+    @Value("${engine.gateway.health-check-timeout-ms:1000}")
+    private long healthCheckTimeoutMillis;
+
+    @Bean(destroyMethod = "close")
+    public GatewayClient gatewayClient() {
+        return new GatewayClient(new GatewayClient.Settings(endpoints, httpVersion, maxConnections,
+                connectTimeoutMillis, readTimeoutMillis, totalTimeoutMillis, poolTimeoutMillis, keepAliveMillis,
+                failureThreshold, ejectMillis, healthCheckIntervalMillis, healthCheckTimeoutMillis));
+    }
+}
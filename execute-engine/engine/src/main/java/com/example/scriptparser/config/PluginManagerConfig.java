@@ -1,10 +1,15 @@
 package com.example.scriptparser.config;
 
+import com.example.scriptparser.service.PluginBatcher;
+import com.example.scriptparser.service.PluginBulkhead;
+import com.example.scriptparser.service.PluginResultCache;
+import com.example.scriptparser.service.PluginService;
 import org.pf4j.DefaultPluginManager;
-import org.pf4j.PluginManager;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -15,18 +20,58 @@ public class PluginManagerConfig {
     @Value("${plugin.directory:plugins}")
     private String pluginsDir;
 
-    @Bean
-    public PluginManager pluginManager() {
-        Path pluginsPath = Paths.get(pluginsDir);
-        DefaultPluginManager pluginManager = new DefaultPluginManager(pluginsPath);
+    // 每个插件使用单独的线程池执行，默认关闭，在请求线程上直接调用
+    @Value("${engine.plugin.bulkhead.enabled:false}")
+    private boolean bulkheadEnabled;
+
+    @Value("${engine.plugin.bulkhead.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${engine.plugin.bulkhead.max-queue:64}")
+    private int maxQueue;
+
+    @Value("${engine.plugin.bulkhead.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    // 标注了 @Pure 的插件函数按参数缓存结果
+    @Value("${engine.plugin.result-cache.enabled:true}")
+    private boolean resultCacheEnabled;
+
+    @Value("${engine.plugin.result-cache.max-entries:10000}")
+    private int resultCacheMaxEntries;
 
-        pluginManager.loadPlugins();
-        pluginManager.startPlugins();
+    @Value("${engine.plugin.result-cache.max-bytes:33554432}")
+    private long resultCacheMaxBytes;
 
-        pluginManager.getPlugins().forEach(plugin -> {
-            System.out.println("Loaded plugin: " + plugin.getDescriptor().getPluginId());
-        });
+    // 实现了批量调用的插件函数，合并窗口内同一函数上的并发调用
+    @Value("${engine.plugin.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${engine.plugin.batch.window-ms:2}")
+    private long batchWindowMillis;
+
+    @Value("${engine.plugin.batch.max-size:64}")
+    private int batchMaxSize;
+
+    @Autowired
+    private Environment environment;
+
+    // 每个插件jar使用单独的 PluginManager，可以单独加载卸载，新旧两代插件可以并存
+    @Bean(destroyMethod = "close")
+    public PluginService pluginService() {
+        Path pluginsPath = Paths.get(pluginsDir);
+        return new PluginService(pluginsPath, () -> new DefaultPluginManager(pluginsPath),
+                bulkheadEnabled ? this::bulkheadSettings : null,
+                resultCacheEnabled ? new PluginResultCache(resultCacheMaxEntries, resultCacheMaxBytes) : null,
+                batchEnabled ? new PluginBatcher(batchWindowMillis, batchMaxSize) : null);
+    }
 
-        return pluginManager;
+    // 单个插件可以用 engine.plugin.bulkhead.<插件ID>.max-concurrent 等覆盖默认值
+    private PluginBulkhead.Settings bulkheadSettings(String pluginId) {
+        String prefix = "engine.plugin.bulkhead." + pluginId + ".";
+        return new PluginBulkhead.Settings(
+                environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                environment.getProperty(prefix + "max-queue", Integer.class, maxQueue),
+                environment.getProperty(prefix + "timeout-ms", Long.class, timeoutMillis));
     }
 }
@@ -0,0 +1,28 @@
+package com.example.scriptparser.config;
+
+import com.example.scriptparser.parser.ParboiledScriptParser;
+import com.example.scriptparser.parser.RecursiveDescentScriptParser;
+import com.example.scriptparser.parser.ScriptParser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ScriptParserConfig {
+
+    // parboiled | recursive-descent
+    @Value("${engine.parser:parboiled}")
+    private String parserType;
+
+    @Bean
+    public ScriptParser scriptParser() {
+        switch (parserType) {
+            case "parboiled":
+                return new ParboiledScriptParser();
+            case "recursive-descent":
+                return new RecursiveDescentScriptParser();
+            default:
+                throw new IllegalArgumentException("Unknown engine.parser: " + parserType);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.scriptparser.controller;
+
+import com.example.scriptparser.service.GatewayClient;
+import com.example.scriptparser.service.GqlResultCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    @Autowired
+    private GqlResultCache gqlResultCache;
+
+    @Autowired
+    private GatewayClient gatewayClient;
+
+    // 按 gqlpk 键或键前缀删除缓存的查询结果
+    @PostMapping("/cache/invalidate")
+    public ResponseEntity<?> invalidateCache(
+            @RequestParam(value = "key", required = false) String key,
+            @RequestParam(value = "prefix", required = false) String prefix
+    ) {
+        if ((key == null || key.isEmpty()) == (prefix == null || prefix.isEmpty())) {
+            return ResponseEntity.badRequest().body("需要且只能指定 key 或 prefix 其中之一");
+        }
+        int removed = key != null && !key.isEmpty()
+                ? gqlResultCache.invalidateKey(key)
+                : gqlResultCache.invalidatePrefix(prefix);
+        return ResponseEntity.ok(Map.of("invalidated", removed));
+    }
+
+    // 替换网关副本列表，不需要重启；请求体为地址数组
+    @PostMapping("/gateway/endpoints")
+    public ResponseEntity<?> updateGatewayEndpoints(@RequestBody List<String> endpoints) {
+        try {
+            gatewayClient.updateEndpoints(endpoints);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.ok(Map.of("endpoints", gatewayClient.getEndpoints()));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.scriptparser.controller;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+public class ExecuteBatchRequest {
+
+    @NotBlank
+    private String scriptName;
+
+    // 每一项是一行的初始参数，与 /execute 的 init 相同
+    @Setter
+    @Getter
+    @NotNull
+    private List<Map<String, String>> inits;
+
+    @JsonProperty("scriptname")
+    public String getScriptName() {
+        return scriptName;
+    }
+
+    @JsonProperty("scriptname")
+    public void setScriptName(String scriptName) {
+        this.scriptName = scriptName;
+    }
+}
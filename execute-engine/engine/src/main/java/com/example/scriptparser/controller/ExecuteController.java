@@ -1,12 +1,26 @@
 package com.example.scriptparser.controller;
 
 import com.example.scriptparser.service.ExecutionService;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 @RestController
 public class ExecuteController {
@@ -14,6 +28,11 @@ public class ExecuteController {
     @Autowired
     private ExecutionService executionService;
 
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ObjectReader initReader = objectMapper.readerFor(new TypeReference<Map<String, String>>() {
+    });
+
     @PostMapping("/execute")
     public ResponseEntity<?> execute(@Valid @RequestBody ExecuteRequest request) {
         try {
@@ -24,4 +43,112 @@ public class ExecuteController {
             return ResponseEntity.badRequest().body("执行失败: " + e.getMessage());
         }
     }
+
+    // 返回 Mono，Spring MVC 按异步请求处理：执行期间释放 Tomcat 线程，等待网关响应时不占用任何线程
+    @PostMapping("/execute/reactive")
+    public Mono<ResponseEntity<?>> executeReactive(@Valid @RequestBody ExecuteRequest request) {
+        return executionService.executeScriptReactive(request.getScriptName(), request.getInit())
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    e.printStackTrace();
+                    return Mono.just(ResponseEntity.badRequest().body("执行失败: " + e.getMessage()));
+                });
+    }
+
+    // 一个脚本对多组初始参数按列执行，结果按行返回，单行的错误不影响其他行
+    @PostMapping("/execute/batch")
+    public ResponseEntity<?> executeBatch(@Valid @RequestBody ExecuteBatchRequest request) {
+        try {
+            JsonNode results = executionService.executeBatch(request.getScriptName(), request.getInits());
+            return ResponseEntity.ok(results);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.badRequest().body("执行失败: " + e.getMessage());
+        }
+    }
+
+    // 以 Server-Sent Events 返回：每条 output 语句执行后发送一个 output 事件，最后发送 result 或 error 事件。
+    // 事件直接写到响应流并刷新，客户端读得慢时脚本随写出阻塞
+    @PostMapping(value = "/execute/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> executeStream(@Valid @RequestBody ExecuteRequest request) {
+        StreamingResponseBody body = out -> {
+            StreamWriter writer = new StreamWriter(out);
+            try {
+                JsonNode result = executionService.executeScript(request.getScriptName(), request.getInit(),
+                        (name, value) -> {
+                            ObjectNode output = objectMapper.createObjectNode();
+                            output.put("name", name);
+                            output.set("value", value);
+                            writer.write(event("output", output));
+                        });
+                writer.write(event("result", result));
+            } catch (Exception e) {
+                if (writer.isBroken()) {
+                    return;
+                }
+                e.printStackTrace();
+                writer.write(event("error", objectMapper.getNodeFactory().textNode("执行失败: " + e.getMessage())));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(body);
+    }
+
+    // 请求体和响应都是 NDJSON：每行一组初始参数，每行一个结果 {"row", "result"} 或 {"row", "error"}。
+    // 边读边按块执行边写出，不限制行数；客户端读得慢时不再读入新的行
+    @PostMapping(value = "/execute/batch/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> executeBatchStream(@RequestParam("scriptname") String scriptName,
+                                                                     InputStream requestBody) {
+        StreamingResponseBody body = out -> {
+            StreamWriter writer = new StreamWriter(out);
+            try (MappingIterator<Map<String, String>> inits = initReader.readValues(requestBody)) {
+                executionService.executeBatch(scriptName, inits, row -> writer.write(line(row)));
+            } catch (Exception e) {
+                if (writer.isBroken()) {
+                    return;
+                }
+                e.printStackTrace();
+                ObjectNode error = objectMapper.createObjectNode();
+                error.put("error", "执行失败: " + e.getMessage());
+                writer.write(line(error));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private byte[] event(String event, JsonNode data) throws IOException {
+        return ("event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] line(JsonNode data) throws IOException {
+        return (objectMapper.writeValueAsString(data) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 每次写出后刷新；并行模式下 output 语句可能在不同线程上执行。写出失败说明客户端已断开，不再报告错误
+    private static final class StreamWriter {
+        private final OutputStream out;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean broken;
+
+        StreamWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            lock.lock();
+            try {
+                out.write(bytes);
+                out.flush();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isBroken() {
+            return broken;
+        }
+    }
 }
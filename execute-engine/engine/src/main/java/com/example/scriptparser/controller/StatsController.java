@@ -0,0 +1,49 @@
+package com.example.scriptparser.controller;
+
+import com.example.scriptparser.service.ExecutionService;
+import com.example.scriptparser.service.GatewayClient;
+import com.example.scriptparser.service.GqlResultCache;
+import com.example.scriptparser.service.PinningMonitor;
+import com.example.scriptparser.service.PluginService;
+import com.example.scriptparser.service.ScriptService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class StatsController {
+
+    @Autowired
+    private ScriptService scriptService;
+
+    @Autowired
+    private ExecutionService executionService;
+
+    @Autowired
+    private PinningMonitor pinningMonitor;
+
+    @Autowired
+    private GqlResultCache gqlResultCache;
+
+    @Autowired
+    private GatewayClient gatewayClient;
+
+    @Autowired
+    private PluginService pluginService;
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scriptCache", scriptService.getCacheStats());
+        stats.put("tiered", executionService.getTieredStats());
+        stats.put("gql", executionService.getGqlStats());
+        stats.put("gqlCache", gqlResultCache.getStats());
+        stats.put("gateway", gatewayClient.getStats());
+        stats.put("pinning", pinningMonitor.getStats());
+        stats.put("plugins", pluginService.getStats());
+        return stats;
+    }
+}
@@ -1,8 +1,10 @@
 package com.example.scriptparser.controller;
 
-import com.example.api.HandlerService;
+import com.example.scriptparser.model.GqlSchema;
+import com.example.scriptparser.service.ExecutionService;
+import com.example.scriptparser.service.GqlResultCache;
+import com.example.scriptparser.service.PluginService;
 import com.example.scriptparser.service.ScriptService;
-import org.pf4j.PluginManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
@@ -24,7 +26,13 @@ public class UpdateController {
     private ScriptService scriptService;
 
     @Autowired
-    private PluginManager pluginManager;
+    private PluginService pluginService;
+
+    @Autowired
+    private GqlResultCache gqlResultCache;
+
+    @Autowired
+    private ExecutionService executionService;
 
     @Value("${plugin.directory:plugins}")
     private String pluginsDir;
@@ -78,31 +86,26 @@ public class UpdateController {
                         }
                     }
                 }
-                scriptService.updateGqlpkQueries(newGqlpkQueries);
+                GqlSchema schema = newGqlpkQueries.isEmpty() ? null : executionService.fetchGatewaySchema();
+                Set<String> updatedKeys = scriptService.updateGqlpkQueries(newGqlpkQueries, schema);
+                // 模板更新后旧模板的缓存结果失效
+                for (String key : updatedKeys) {
+                    gqlResultCache.invalidateKey(key);
+                }
+                // 预编译的查询注册为网关的持久化查询
+                executionService.registerPersistedQueries(updatedKeys);
             }
 
-            // 重启插件
-            reloadPlugins();
+            // 只重新加载内容有变化的插件jar
+            PluginService.ReloadResult reloadResult = pluginService.reload();
 
-            return ResponseEntity.ok("更新成功");
+            return ResponseEntity.ok("更新成功，" + reloadResult);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("更新失败: " + e.getMessage());
         }
     }
 
-    private void reloadPlugins() {
-        pluginManager.stopPlugins();
-        pluginManager.unloadPlugins();
-        pluginManager.loadPlugins();
-        pluginManager.startPlugins();
-
-        List<HandlerService> extensions = pluginManager.getExtensions(HandlerService.class);
-        for (HandlerService service : extensions) {
-            System.out.println("启动插件: " + service.getName());
-        }
-    }
-
     private String getFileNameWithoutExtension(String filename, String extension) {
         if (filename == null || !filename.endsWith(extension)) {
             return filename;
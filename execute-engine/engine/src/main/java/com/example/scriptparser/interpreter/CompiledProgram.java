@@ -0,0 +1,21 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.model.ExecutionContext;
+
+public class CompiledProgram {
+
+    @FunctionalInterface
+    interface Step {
+        void run(ExecutionRuntime runtime, ExecutionContext context) throws Exception;
+    }
+
+    private final Step entry;
+
+    CompiledProgram(Step entry) {
+        this.entry = entry;
+    }
+
+    public void run(ExecutionRuntime runtime, ExecutionContext context) throws Exception {
+        entry.run(runtime, context);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.model.ExecutionContext;
+
+import java.util.List;
+
+/**
+ * 编译后的脚本回调执行引擎的入口：GraphQL查询、插件调用和最终输出的登记。
+ */
+public interface ExecutionRuntime {
+
+    void executeGqlQuery(Instruction insn, ExecutionContext context) throws Exception;
+
+    // 同一块内相邻的多条gql语句，按顺序执行的语义由实现保证，可以合并为一个请求
+    void executeGqlQueries(List<Instruction> run, ExecutionContext context) throws Exception;
+
+    void executePluginCall(Instruction insn, ExecutionContext context) throws Exception;
+
+    void recordOutput(int slot);
+}
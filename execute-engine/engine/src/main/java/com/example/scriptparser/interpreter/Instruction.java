@@ -0,0 +1,103 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.ast.Statement;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * 解析后的语句：变量名已替换为槽位，常量和查询键在加载时预先计算。
+ */
+public class Instruction {
+
+    public static final int MAX_LOOP_ITERATIONS = 1000;
+
+    public enum Kind {
+        GQL_QUERY,
+        DATA_ALIGN,
+        PLUGIN_CALL,
+        ASSIGN,
+        INT_DEF,
+        INT_CAL,
+        IF,
+        WHILE,
+        BLOCK
+    }
+
+    private final Kind kind;
+    private final Statement statement;
+    private final int target;
+    private final int source;
+    private final int[] arguments;
+    private final int intValue;
+    private final JsonNode constant;
+    private final String queryKey;
+    private final List<Instruction> body;
+
+    Instruction(Kind kind, Statement statement, int target, int source, int[] arguments,
+                int intValue, JsonNode constant, String queryKey, List<Instruction> body) {
+        this.kind = kind;
+        this.statement = statement;
+        this.target = target;
+        this.source = source;
+        this.arguments = arguments;
+        this.intValue = intValue;
+        this.constant = constant;
+        this.queryKey = queryKey;
+        this.body = body;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Statement getStatement() {
+        return statement;
+    }
+
+    // 写入的槽位，没有则为 -1
+    public int getTarget() {
+        return target;
+    }
+
+    // 读取的槽位（对齐源变量、cal 源变量、if/while 条件变量），没有则为 -1
+    public int getSource() {
+        return source;
+    }
+
+    // 插件调用参数槽位，与 PluginCallStatement.getArguments() 一一对应
+    public int[] getArguments() {
+        return arguments;
+    }
+
+    // int 定义的值，或 cal 语句折叠了运算符后的增量
+    public int getIntValue() {
+        return intValue;
+    }
+
+    public JsonNode getConstant() {
+        return constant;
+    }
+
+    public String getQueryKey() {
+        return queryKey;
+    }
+
+    public List<Instruction> getBody() {
+        return body;
+    }
+
+    // 从 start 开始连续 GQL_QUERY 指令的结束下标
+    public static int gqlRunEnd(List<Instruction> instructions, int start) {
+        int end = start;
+        while (end < instructions.size() && instructions.get(end).getKind() == Kind.GQL_QUERY) {
+            end++;
+        }
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return "Instruction{" + kind + ", " + statement + "}";
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.model.SlotLayout;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Program {
+    private final SlotLayout layout;
+    private final List<Instruction> instructions;
+
+    // 分层执行的运行时状态
+    private final AtomicInteger invocations = new AtomicInteger();
+    private volatile CompiledProgram compiled;
+    // 并发执行的依赖图，依赖 gqlpk 模板的占位符，模板更新后重新构建
+    private volatile VersionedGraph graph;
+
+    private record VersionedGraph(long templatesVersion, StatementGraph graph) {
+    }
+
+    public Program(SlotLayout layout, List<Instruction> instructions) {
+        this.layout = layout;
+        this.instructions = List.copyOf(instructions);
+    }
+
+    public SlotLayout getLayout() {
+        return layout;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public int recordInvocation() {
+        return invocations.incrementAndGet();
+    }
+
+    public CompiledProgram getCompiled() {
+        return compiled;
+    }
+
+    public void setCompiled(CompiledProgram compiled) {
+        this.compiled = compiled;
+    }
+
+    /**
+     * @return 按该版本的 gqlpk 模板构建的依赖图，没有时返回 null
+     */
+    public StatementGraph getGraph(long templatesVersion) {
+        VersionedGraph current = graph;
+        return current != null && current.templatesVersion() == templatesVersion ? current.graph() : null;
+    }
+
+    public void setGraph(long templatesVersion, StatementGraph graph) {
+        this.graph = new VersionedGraph(templatesVersion, graph);
+    }
+
+    @Override
+    public String toString() {
+        return "Program{slots=" + layout.size() + ", instructions=" + instructions.size() + "}";
+    }
+}
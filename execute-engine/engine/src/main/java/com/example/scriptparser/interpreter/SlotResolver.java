@@ -0,0 +1,95 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.ast.*;
+import com.example.scriptparser.model.SlotLayout;
+import com.example.scriptparser.util.JsonNodeUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 加载脚本时的解析阶段：为每个变量名分配固定槽位，并把AST转换为 {@link Instruction}。
+ */
+public class SlotResolver {
+
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+
+    public static Program resolve(List<Statement> statements) throws Exception {
+        SlotResolver resolver = new SlotResolver();
+        List<Instruction> instructions = resolver.resolveAll(statements);
+        return new Program(new SlotLayout(new ArrayList<>(resolver.slots.keySet())), instructions);
+    }
+
+    private List<Instruction> resolveAll(List<Statement> statements) throws Exception {
+        List<Instruction> instructions = new ArrayList<>(statements.size());
+        for (Statement stmt : statements) {
+            instructions.add(resolveStatement(stmt));
+        }
+        return List.copyOf(instructions);
+    }
+
+    private Instruction resolveStatement(Statement stmt) throws Exception {
+        if (stmt instanceof GqlQueryStatement gql) {
+            return new Instruction(Instruction.Kind.GQL_QUERY, stmt, slot(gql.getVariableName()), -1, null,
+                    0, null, extractQueryKey(gql.getQueryBody()), null);
+        } else if (stmt instanceof DataAlignStatement align) {
+            return new Instruction(Instruction.Kind.DATA_ALIGN, stmt, slot(align.getOutputVariable()),
+                    slot(align.getSourceVariable()), null, 0, null, null, null);
+        } else if (stmt instanceof PluginCallStatement call) {
+            int[] arguments = new int[call.getArguments().size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = slot(call.getArguments().get(i));
+            }
+            return new Instruction(Instruction.Kind.PLUGIN_CALL, stmt, slot(call.getVariableName()), -1, arguments,
+                    0, null, null, null);
+        } else if (stmt instanceof DefStatement def) {
+            return new Instruction(Instruction.Kind.ASSIGN, stmt, slot(def.getVariableName()), -1, null,
+                    0, JsonNodeUtil.createValueNode(def.getValue().getValue()), null, null);
+        } else if (stmt instanceof SetStatement set) {
+            return new Instruction(Instruction.Kind.ASSIGN, stmt, slot(set.getVariableName()), -1, null,
+                    0, JsonNodeUtil.createValueNode(set.getValue().getValue()), null, null);
+        } else if (stmt instanceof IntDefStatement intDef) {
+            return new Instruction(Instruction.Kind.INT_DEF, stmt, slot(intDef.getVariableName()), -1, null,
+                    intDef.getValue(), null, null, null);
+        } else if (stmt instanceof IntCalStatement intCal) {
+            int delta;
+            switch (intCal.getOperator()) {
+                case "+":
+                    delta = intCal.getOperand();
+                    break;
+                case "-":
+                    delta = -intCal.getOperand();
+                    break;
+                default:
+                    throw new Exception("Unsupported operator: " + intCal.getOperator());
+            }
+            return new Instruction(Instruction.Kind.INT_CAL, stmt, slot(intCal.getTargetVariable()),
+                    slot(intCal.getSourceVariable()), null, delta, null, null, null);
+        } else if (stmt instanceof IfStatement ifStmt) {
+            return new Instruction(Instruction.Kind.IF, stmt, -1, slot(ifStmt.getConditionVariable()), null,
+                    0, null, null, resolveAll(ifStmt.getTrueBlock().getStatements()));
+        } else if (stmt instanceof WhileStatement whileStmt) {
+            return new Instruction(Instruction.Kind.WHILE, stmt, -1, slot(whileStmt.getConditionVariable()), null,
+                    0, null, null, resolveAll(whileStmt.getLoopBlock().getStatements()));
+        } else if (stmt instanceof Block block) {
+            return new Instruction(Instruction.Kind.BLOCK, stmt, -1, -1, null,
+                    0, null, null, resolveAll(block.getStatements()));
+        }
+        throw new Exception("Unknown statement type: " + stmt.getClass().getName());
+    }
+
+    private int slot(String name) {
+        return slots.computeIfAbsent(name, n -> slots.size());
+    }
+
+    private static String extractQueryKey(String queryBody) {
+        // 从 {getTripByTripId} 中提取 getTripByTripId
+        String trimmed = queryBody.trim();
+        if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
+            return trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+}
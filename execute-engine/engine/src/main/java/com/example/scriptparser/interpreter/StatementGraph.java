@@ -0,0 +1,155 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.model.SlotLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 顶层语句的依赖图。根据每条语句读写的槽位（gql 语句还包括模板占位符引用的变量）
+ * 建立写后读、读后写、写后写依赖；if/while 块作为屏障，与前后所有语句保持顺序；
+ * output 语句之间保持原有顺序，保证最终输出变量与顺序执行一致。
+ */
+public class StatementGraph {
+
+    private static final int[] NO_DEPENDENCIES = new int[0];
+
+    private final List<Instruction> nodes;
+    private final int[][] dependencies;
+
+    private StatementGraph(List<Instruction> nodes, int[][] dependencies) {
+        this.nodes = nodes;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @param templateReads 返回 gql 语句模板中引用的变量名；不在槽位表中的名字（初始参数）不产生依赖
+     */
+    public static StatementGraph build(List<Instruction> instructions, SlotLayout layout,
+                                       Function<Instruction, Collection<String>> templateReads) {
+        int n = instructions.size();
+        int[][] dependencies = new int[n][];
+        int[] lastWriter = new int[layout.size()];
+        List<List<Integer>> readersSinceWrite = new ArrayList<>(layout.size());
+        for (int slot = 0; slot < layout.size(); slot++) {
+            readersSinceWrite.add(new ArrayList<>());
+        }
+        Arrays.fill(lastWriter, -1);
+        int lastBarrier = -1;
+        int lastOutput = -1;
+        int[] marks = new int[n];
+        Arrays.fill(marks, -1);
+
+        for (int i = 0; i < n; i++) {
+            Instruction insn = instructions.get(i);
+            List<Integer> deps = new ArrayList<>();
+
+            if (isBarrier(insn)) {
+                for (int j = lastBarrier + 1; j < i; j++) {
+                    deps.add(j);
+                }
+                if (lastBarrier >= 0) {
+                    deps.add(lastBarrier);
+                }
+                lastBarrier = i;
+                Arrays.fill(lastWriter, -1);
+                readersSinceWrite.forEach(List::clear);
+                dependencies[i] = toArray(deps, marks, i);
+                continue;
+            }
+
+            if (lastBarrier >= 0) {
+                deps.add(lastBarrier);
+            }
+            for (int slot : reads(insn, layout, templateReads)) {
+                if (lastWriter[slot] >= 0) {
+                    deps.add(lastWriter[slot]);
+                }
+                readersSinceWrite.get(slot).add(i);
+            }
+            int target = insn.getTarget();
+            if (target >= 0) {
+                if (lastWriter[target] >= 0) {
+                    deps.add(lastWriter[target]);
+                }
+                for (int reader : readersSinceWrite.get(target)) {
+                    if (reader != i) {
+                        deps.add(reader);
+                    }
+                }
+                readersSinceWrite.get(target).clear();
+                lastWriter[target] = i;
+            }
+            if (insn.getKind() == Instruction.Kind.DATA_ALIGN) {
+                if (lastOutput >= 0) {
+                    deps.add(lastOutput);
+                }
+                lastOutput = i;
+            }
+            dependencies[i] = toArray(deps, marks, i);
+        }
+        return new StatementGraph(instructions, dependencies);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public Instruction getNode(int index) {
+        return nodes.get(index);
+    }
+
+    // 该语句必须等待完成的前序语句下标
+    public int[] getDependencies(int index) {
+        return dependencies[index];
+    }
+
+    private static boolean isBarrier(Instruction insn) {
+        return insn.getKind() == Instruction.Kind.IF
+                || insn.getKind() == Instruction.Kind.WHILE
+                || insn.getKind() == Instruction.Kind.BLOCK;
+    }
+
+    private static int[] reads(Instruction insn, SlotLayout layout,
+                               Function<Instruction, Collection<String>> templateReads) {
+        switch (insn.getKind()) {
+            case DATA_ALIGN:
+            case INT_CAL:
+                return new int[]{insn.getSource()};
+            case PLUGIN_CALL:
+                return insn.getArguments();
+            case GQL_QUERY: {
+                Collection<String> names = templateReads.apply(insn);
+                int[] slots = new int[names.size()];
+                int count = 0;
+                for (String name : names) {
+                    int slot = layout.indexOf(name);
+                    if (slot >= 0) {
+                        slots[count++] = slot;
+                    }
+                }
+                return Arrays.copyOf(slots, count);
+            }
+            default:
+                return NO_DEPENDENCIES;
+        }
+    }
+
+    private static int[] toArray(List<Integer> deps, int[] marks, int index) {
+        if (deps.isEmpty()) {
+            return NO_DEPENDENCIES;
+        }
+        int[] result = new int[deps.size()];
+        int count = 0;
+        for (int dep : deps) {
+            if (marks[dep] != index) {
+                marks[dep] = index;
+                result[count++] = dep;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.scriptparser.interpreter;
+
+import com.example.scriptparser.model.SlotLayout;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 第二层执行：把热点脚本的 {@link Instruction} 树一次性编译成闭包链。
+ * 每条语句的槽位、常量和分支都固化在各自的闭包里，运行时不再按语句类型分派。
+ */
+public class TieredCompiler {
+
+    private final SlotLayout layout;
+
+    private TieredCompiler(SlotLayout layout) {
+        this.layout = layout;
+    }
+
+    public static CompiledProgram compile(Program program) {
+        return new CompiledProgram(new TieredCompiler(program.getLayout()).block(program.getInstructions()));
+    }
+
+    private CompiledProgram.Step block(List<Instruction> instructions) {
+        List<CompiledProgram.Step> stepList = new ArrayList<>(instructions.size());
+        for (int i = 0, n = instructions.size(); i < n; ) {
+            int end = Instruction.gqlRunEnd(instructions, i);
+            if (end - i > 1) {
+                // 相邻的gql语句交给运行时整体执行，以便合并请求
+                List<Instruction> run = List.copyOf(instructions.subList(i, end));
+                stepList.add((runtime, context) -> runtime.executeGqlQueries(run, context));
+                i = end;
+            } else {
+                stepList.add(compile(instructions.get(i++)));
+            }
+        }
+        CompiledProgram.Step[] steps = stepList.toArray(new CompiledProgram.Step[0]);
+        switch (steps.length) {
+            case 0:
+                return (runtime, context) -> { };
+            case 1:
+                return steps[0];
+            case 2: {
+                CompiledProgram.Step first = steps[0];
+                CompiledProgram.Step second = steps[1];
+                return (runtime, context) -> {
+                    first.run(runtime, context);
+                    second.run(runtime, context);
+                };
+            }
+            default:
+                return (runtime, context) -> {
+                    for (CompiledProgram.Step step : steps) {
+                        step.run(runtime, context);
+                    }
+                };
+        }
+    }
+
+    private CompiledProgram.Step compile(Instruction insn) {
+        int target = insn.getTarget();
+        int source = insn.getSource();
+        switch (insn.getKind()) {
+            case GQL_QUERY:
+                return (runtime, context) -> runtime.executeGqlQuery(insn, context);
+            case PLUGIN_CALL:
+                return (runtime, context) -> runtime.executePluginCall(insn, context);
+            case DATA_ALIGN: {
+                String sourceName = layout.nameOf(source);
+                return (runtime, context) -> {
+                    Object sourceValue = context.get(source);
+                    if (sourceValue == null) {
+                        throw new Exception("Source variable " + sourceName + " not found.");
+                    }
+                    context.set(target, sourceValue);
+                    runtime.recordOutput(target);
+                };
+            }
+            case ASSIGN: {
+                JsonNode constant = insn.getConstant();
+                return (runtime, context) -> context.set(target, constant);
+            }
+            case INT_DEF: {
+                int value = insn.getIntValue();
+                return (runtime, context) -> context.setInt(target, value);
+            }
+            case INT_CAL: {
+                int delta = insn.getIntValue();
+                String sourceName = layout.nameOf(source);
+                return (runtime, context) -> {
+                    if (!context.isInt(source)) {
+                        throw new Exception("Variable " + sourceName + " is not an integer.");
+                    }
+                    context.setInt(target, context.getInt(source) + delta);
+                };
+            }
+            case IF: {
+                CompiledProgram.Step body = block(insn.getBody());
+                return (runtime, context) -> {
+                    if (context.evaluateCondition(source)) {
+                        body.run(runtime, context);
+                    }
+                };
+            }
+            case WHILE: {
+                CompiledProgram.Step body = block(insn.getBody());
+                return (runtime, context) -> {
+                    int iteration = 0;
+                    while (context.evaluateCondition(source)) {
+                        if (++iteration > Instruction.MAX_LOOP_ITERATIONS) {
+                            throw new Exception("While loop exceeded max iterations");
+                        }
+                        body.run(runtime, context);
+                    }
+                };
+            }
+            case BLOCK:
+                return block(insn.getBody());
+            default:
+                throw new IllegalStateException("Unknown instruction kind: " + insn.getKind());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.scriptparser.model;
+
+import com.example.scriptparser.ast.Statement;
+import com.example.scriptparser.interpreter.Program;
+
+import java.util.List;
+
+public class CompiledScript {
+    private final String name;
+    private final String contentHash;
+    private final List<Statement> statements;
+    private final Program program;
+
+    public CompiledScript(String name, String contentHash, List<Statement> statements, Program program) {
+        this.name = name;
+        this.contentHash = contentHash;
+        this.statements = List.copyOf(statements);
+        this.program = program;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public List<Statement> getStatements() {
+        return statements;
+    }
+
+    public Program getProgram() {
+        return program;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledScript{name='" + name + "', hash='" + contentHash + "', statements=" + statements.size() + "}";
+    }
+}
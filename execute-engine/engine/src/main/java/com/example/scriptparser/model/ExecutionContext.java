@@ -1,27 +1,125 @@
 package com.example.scriptparser.model;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * 脚本执行帧。脚本中出现的变量按 {@link SlotLayout} 存放在平坦数组中，
+ * int 变量存放在不装箱的寄存器数组里；按名字访问只用于初始参数、模板占位符和调试输出。
+ */
 public class ExecutionContext {
-    private final Map<String, Object> variables = new HashMap<>();
+    private final SlotLayout layout;
+    private final Object[] values;
+    private final int[] ints;
+    private final boolean[] intSlots;
+    private Map<String, Object> extraVariables;
+
+    public ExecutionContext() {
+        this(SlotLayout.EMPTY);
+    }
+
+    public ExecutionContext(SlotLayout layout) {
+        this.layout = layout;
+        this.values = new Object[layout.size()];
+        this.ints = new int[layout.size()];
+        this.intSlots = new boolean[layout.size()];
+    }
+
+    public SlotLayout getLayout() {
+        return layout;
+    }
+
+    public Object get(int slot) {
+        if (intSlots[slot]) {
+            return ints[slot];
+        }
+        return values[slot];
+    }
+
+    public void set(int slot, Object value) {
+        if (value instanceof Integer intValue) {
+            setInt(slot, intValue);
+            return;
+        }
+        values[slot] = value;
+        intSlots[slot] = false;
+    }
+
+    public boolean isInt(int slot) {
+        return intSlots[slot];
+    }
+
+    public int getInt(int slot) {
+        return ints[slot];
+    }
+
+    public void setInt(int slot, int value) {
+        ints[slot] = value;
+        intSlots[slot] = true;
+        values[slot] = null;
+    }
+
+    // 条件求值：int 非负，0为false、正数为true；JsonNode 必须是布尔值
+    public boolean evaluateCondition(int slot) throws Exception {
+        if (intSlots[slot]) {
+            int intValue = ints[slot];
+            if (intValue < 0) {
+                throw new Exception("Integer condition cannot be negative: " + intValue);
+            }
+            return intValue > 0;
+        }
+
+        Object conditionValue = values[slot];
+        if (conditionValue == null) {
+            throw new Exception("Condition variable " + layout.nameOf(slot) + " not found.");
+        }
+        if (conditionValue instanceof JsonNode jsonNode && jsonNode.isBoolean()) {
+            return jsonNode.asBoolean();
+        }
+        throw new Exception("Invalid condition type for variable: " + layout.nameOf(slot));
+    }
 
     public void setVariable(String name, Object value) {
-        variables.put(name, value);
+        int slot = layout.indexOf(name);
+        if (slot >= 0) {
+            set(slot, value);
+            return;
+        }
+        if (extraVariables == null) {
+            extraVariables = new HashMap<>();
+        }
+        extraVariables.put(name, value);
     }
 
     public Object getVariable(String name) {
-        return variables.get(name);
+        int slot = layout.indexOf(name);
+        if (slot >= 0) {
+            return get(slot);
+        }
+        return extraVariables == null ? null : extraVariables.get(name);
     }
 
     public Map<String, Object> getAllVariables() {
-        return new HashMap<>(variables);
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (int slot = 0; slot < layout.size(); slot++) {
+            Object value = get(slot);
+            if (value != null) {
+                variables.put(layout.nameOf(slot), value);
+            }
+        }
+        if (extraVariables != null) {
+            variables.putAll(extraVariables);
+        }
+        return variables;
     }
 
     @Override
     public String toString() {
-        String varsString = variables.entrySet().stream()
+        String varsString = getAllVariables().entrySet().stream()
                 .map(entry -> entry.getKey() + "=" + valueToString(entry.getValue()))
                 .collect(Collectors.joining(", "));
         return "ExecutionContext{" + varsString + "}";
@@ -0,0 +1,16 @@
+package com.example.scriptparser.model;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 发送给网关的一次GraphQL请求。预编译的模板查询文本固定，绑定值放在 variables 中；
+ * 按拼接方式执行的模板 variables 为 null。
+ *
+ * @param queryHash 查询文本固定时为其SHA-256，可以按持久化查询只发送哈希；否则为 null
+ */
+public record GqlRequest(String query, ObjectNode variables, String queryHash) {
+
+    public GqlRequest(String query) {
+        this(query, null, null);
+    }
+}
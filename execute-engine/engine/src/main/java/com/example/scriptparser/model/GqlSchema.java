@@ -0,0 +1,142 @@
+package com.example.scriptparser.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 网关schema中预编译模板需要的部分：各类型字段的参数类型、返回类型和输入对象的字段类型，
+ * 由内省查询的结果构建，用于为模板占位符推断变量类型。
+ */
+public class GqlSchema {
+
+    public static final String INTROSPECTION_QUERY = """
+            query {
+              __schema {
+                queryType { name }
+                mutationType { name }
+                subscriptionType { name }
+                types {
+                  name
+                  fields(includeDeprecated: true) { name args { name type { ...TypeRef } } type { ...TypeRef } }
+                  inputFields { name type { ...TypeRef } }
+                }
+                directives { name args { name type { ...TypeRef } } }
+              }
+            }
+            fragment TypeRef on __Type {
+              kind name ofType { kind name ofType { kind name ofType { kind name ofType { kind name ofType { kind name } } } } }
+            }""";
+
+    /**
+     * 类型引用，kind 为 NON_NULL 或 LIST 时由 ofType 包装内层类型。
+     */
+    public record TypeRef(String kind, String name, TypeRef ofType) {
+
+        public String namedType() {
+            return ofType == null ? name : ofType.namedType();
+        }
+
+        // 列表的元素类型，不是列表时返回 null
+        public TypeRef elementType() {
+            TypeRef type = "NON_NULL".equals(kind) ? ofType : this;
+            return type != null && "LIST".equals(type.kind) ? type.ofType : null;
+        }
+
+        // 变量定义中的类型写法，如 [ID!]!
+        public String render() {
+            if ("NON_NULL".equals(kind)) {
+                return ofType.render() + "!";
+            }
+            if ("LIST".equals(kind)) {
+                return "[" + ofType.render() + "]";
+            }
+            return name;
+        }
+    }
+
+    public record Field(TypeRef type, Map<String, TypeRef> args) {
+    }
+
+    private final Map<String, String> rootTypes = new HashMap<>();
+    private final Map<String, Map<String, Field>> fields = new HashMap<>();
+    private final Map<String, Map<String, TypeRef>> inputFields = new HashMap<>();
+    private final Map<String, Map<String, TypeRef>> directives = new HashMap<>();
+
+    /**
+     * @param data 内省查询响应中的 data，结构不完整时返回 null
+     */
+    public static GqlSchema fromIntrospection(JsonNode data) {
+        JsonNode schemaNode = data == null ? null : data.get("__schema");
+        if (schemaNode == null || !schemaNode.path("types").isArray()) {
+            return null;
+        }
+        GqlSchema schema = new GqlSchema();
+        schema.rootTypes.put("query", schemaNode.path("queryType").path("name").asText(null));
+        schema.rootTypes.put("mutation", schemaNode.path("mutationType").path("name").asText(null));
+        schema.rootTypes.put("subscription", schemaNode.path("subscriptionType").path("name").asText(null));
+        for (JsonNode type : schemaNode.get("types")) {
+            String typeName = type.path("name").asText();
+            if (type.path("fields").isArray()) {
+                Map<String, Field> typeFields = new HashMap<>();
+                for (JsonNode field : type.get("fields")) {
+                    typeFields.put(field.path("name").asText(),
+                            new Field(typeRef(field.get("type")), arguments(field.get("args"))));
+                }
+                schema.fields.put(typeName, typeFields);
+            }
+            if (type.path("inputFields").isArray()) {
+                schema.inputFields.put(typeName, arguments(type.get("inputFields")));
+            }
+        }
+        for (JsonNode directive : schemaNode.path("directives")) {
+            schema.directives.put(directive.path("name").asText(), arguments(directive.get("args")));
+        }
+        return schema;
+    }
+
+    // 操作类型对应的根类型名，schema 未定义该操作时返回 null
+    public String rootType(String operation) {
+        return rootTypes.get(operation);
+    }
+
+    public Field field(String typeName, String fieldName) {
+        Map<String, Field> typeFields = typeName == null ? null : fields.get(typeName);
+        return typeFields == null ? null : typeFields.get(fieldName);
+    }
+
+    public TypeRef inputField(String typeName, String fieldName) {
+        Map<String, TypeRef> typeFields = typeName == null ? null : inputFields.get(typeName);
+        return typeFields == null ? null : typeFields.get(fieldName);
+    }
+
+    public Map<String, TypeRef> directiveArgs(String directiveName) {
+        return directives.get(directiveName);
+    }
+
+    private static Map<String, TypeRef> arguments(JsonNode args) {
+        Map<String, TypeRef> result = new LinkedHashMap<>();
+        if (args != null) {
+            for (JsonNode arg : args) {
+                result.put(arg.path("name").asText(), typeRef(arg.get("type")));
+            }
+        }
+        return result;
+    }
+
+    private static TypeRef typeRef(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        String kind = node.path("kind").asText();
+        JsonNode name = node.get("name");
+        TypeRef ofType = typeRef(node.get("ofType"));
+        if (ofType == null && (kind.equals("NON_NULL") || kind.equals("LIST"))) {
+            // 超出内省查询的嵌套深度
+            return null;
+        }
+        return new TypeRef(kind, name == null || name.isNull() ? null : name.asText(), ofType);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.scriptparser.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * gqlpk 中的一条GraphQL查询模板，上传时提取出其中的 ${x.y} 占位符。
+ * 键后可以用分号附加选项，如 [getTrip;batch;ttl=300]:[...]。
+ * 能从网关schema推断出占位符类型的模板会预编译为带 $变量 的固定查询文档。
+ */
+public class GqlTemplate {
+
+    public static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{([a-zA-Z0-9_.]+)\\}");
+
+    private final String key;
+    private final String text;
+    private final List<String> placeholders;
+    private final Map<String, String> options;
+    private final long cacheTtlSeconds;
+    private final boolean readOnly;
+    private final Document document;
+
+    /**
+     * 预编译的查询文档。
+     *
+     * @param variables 占位符名 -> GraphQL变量名
+     * @param hash      查询文本的SHA-256，用作持久化查询的标识
+     */
+    public record Document(String query, Map<String, String> variables, String hash) {
+    }
+
+    public GqlTemplate(String key, String text) {
+        this(key, text, Map.of());
+    }
+
+    public GqlTemplate(String key, String text, Map<String, String> options) {
+        this.key = key;
+        this.text = text;
+        this.options = Map.copyOf(options);
+        Set<String> names = new LinkedHashSet<>();
+        Matcher matcher = VARIABLE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        this.placeholders = List.copyOf(new ArrayList<>(names));
+        this.cacheTtlSeconds = parseTtl(key, options.get("ttl"));
+        this.readOnly = isReadOnly(text);
+        this.document = null;
+    }
+
+    private GqlTemplate(GqlTemplate template, Document document) {
+        this.key = template.key;
+        this.text = template.text;
+        this.options = template.options;
+        this.placeholders = template.placeholders;
+        this.cacheTtlSeconds = template.cacheTtlSeconds;
+        this.readOnly = template.readOnly;
+        this.document = document;
+    }
+
+    public GqlTemplate withDocument(Document document) {
+        return new GqlTemplate(this, document);
+    }
+
+    // 解析 gqlpk 中带选项的键：key;name;name=value
+    public static GqlTemplate fromDeclaration(String declaration, String text) {
+        String[] segments = declaration.split(";");
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 1; i < segments.length; i++) {
+            String option = segments[i].trim();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int eq = option.indexOf('=');
+            if (eq < 0) {
+                options.put(option, "");
+            } else {
+                options.put(option.substring(0, eq).trim(), option.substring(eq + 1).trim());
+            }
+        }
+        return new GqlTemplate(segments[0].trim(), text, options);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // 模板引用的变量名（去重，按首次出现顺序）
+    public List<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    // 是否参与跨请求的批量查询。批量会把相同的请求只发送一次，只对只读查询生效，mutation 上的 batch 选项被忽略
+    public boolean isBatched() {
+        return options.containsKey("batch") && readOnly;
+    }
+
+    // 结果缓存的有效期，0 表示不缓存
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    // 模板中只包含 query 操作，mutation 和 subscription 的结果不缓存
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    // 预编译的查询文档，未能预编译时为 null，执行时把绑定值拼接进模板文本
+    public Document getDocument() {
+        return document;
+    }
+
+    public boolean isCacheable() {
+        return cacheTtlSeconds > 0 && readOnly;
+    }
+
+    private static long parseTtl(String key, String ttl) {
+        if (ttl == null || ttl.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(ttl));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid ttl for GraphQL Key " + key + ": " + ttl);
+            return 0;
+        }
+    }
+
+    // 扫描最外层的定义关键字，跳过字符串、注释和选择集内部
+    private static boolean isReadOnly(String text) {
+        int depth = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                i++;
+                while (i < length && text.charAt(i) != '"') {
+                    i += text.charAt(i) == '\\' ? 2 : 1;
+                }
+                i++;
+            } else if (c == '#') {
+                while (i < length && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '{' || c == '(') {
+                depth++;
+                i++;
+            } else if (c == '}' || c == ')') {
+                depth--;
+                i++;
+            } else if (depth == 0 && (Character.isLetter(c) || c == '_')) {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+                    i++;
+                }
+                String word = text.substring(start, i);
+                if (word.equals("mutation") || word.equals("subscription")) {
+                    return false;
+                }
+            } else {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "GqlTemplate{key='" + key + "', placeholders=" + placeholders + ", options=" + options
+                + ", compiled=" + (document != null) + "}";
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.scriptparser.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 脚本中变量名到帧槽位的固定映射，在脚本加载时由解析阶段生成。
+ */
+public class SlotLayout {
+
+    public static final SlotLayout EMPTY = new SlotLayout(List.of());
+
+    private final String[] names;
+    private final Map<String, Integer> slots;
+
+    public SlotLayout(List<String> names) {
+        this.names = names.toArray(new String[0]);
+        this.slots = new HashMap<>(names.size() * 2);
+        for (int i = 0; i < this.names.length; i++) {
+            if (slots.put(this.names[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate slot name: " + this.names[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public int indexOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public String nameOf(int slot) {
+        return names[slot];
+    }
+
+    @Override
+    public String toString() {
+        return "SlotLayout" + Arrays.toString(names);
+    }
+}
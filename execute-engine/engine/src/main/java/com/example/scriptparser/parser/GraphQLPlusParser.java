@@ -93,9 +93,11 @@ public class GraphQLPlusParser extends BaseParser<Object> {
         StringVar varName = new StringVar();
         StringVar pluginName = new StringVar();
         StringVar funcName = new StringVar();
-        Var<List<String>> args = new Var<>(new ArrayList<>());
+        Var<List<String>> args = new Var<>();
 
         return Sequence(
+                // Var的初始值在每次进入规则时会被复用，这里显式为每条语句创建新的参数列表
+                args.set(new ArrayList<>()),
                 String("new"), Spacing(),
                 RawIdentifier(), varName.set(match()), Spacing(),
                 Ch('='), Spacing(),
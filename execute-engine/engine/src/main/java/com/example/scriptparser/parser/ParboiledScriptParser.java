@@ -0,0 +1,37 @@
+package com.example.scriptparser.parser;
+
+import com.example.scriptparser.ast.Statement;
+import org.parboiled.Parboiled;
+import org.parboiled.errors.ErrorUtils;
+import org.parboiled.errors.ParseError;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.support.Position;
+
+import java.util.List;
+
+public class ParboiledScriptParser implements ScriptParser {
+
+    @Override
+    public List<Statement> parse(String script) throws ScriptParseException {
+        // parboiled解析器实例不是线程安全的，每次解析单独创建
+        GraphQLPlusParser parser = Parboiled.createParser(GraphQLPlusParser.class);
+        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(parser.Script());
+        ParsingResult<Object> result = runner.run(script);
+
+        if (result.hasErrors()) {
+            ParseError first = result.parseErrors.get(0);
+            Position position = result.inputBuffer.getPosition(first.getStartIndex());
+            throw new ScriptParseException(ErrorUtils.printParseErrors(result), position.line, position.column);
+        }
+
+        Object parseResultValue = result.resultValue;
+        if (!(parseResultValue instanceof List)) {
+            throw new ScriptParseException("expected List<Statement>", 1, 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Statement> statements = (List<Statement>) parseResultValue;
+        return statements;
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.scriptparser.parser;
+
+import com.example.scriptparser.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 手写的递归下降解析器，语法与 {@link GraphQLPlusParser} 保持一致。
+ * 单遍扫描输入，按语句开头的关键字直接分派，不构建解析树；
+ * 只有 new 开头的语句需要在 gql 查询与插件调用之间回溯一次。
+ */
+public class RecursiveDescentScriptParser implements ScriptParser {
+
+    private static final String[] RESERVED_KEYWORDS = {
+            "new", "gql", "query", "output", "def", "set", "int", "cal", "if", "while", "true", "false"
+    };
+
+    @Override
+    public List<Statement> parse(String script) throws ScriptParseException {
+        return new Cursor(script).script();
+    }
+
+    private static final class Cursor {
+        private final String src;
+        private final int length;
+        private int pos;
+
+        Cursor(String src) {
+            this.src = src;
+            this.length = src.length();
+        }
+
+        List<Statement> script() throws ScriptParseException {
+            List<Statement> statements = new ArrayList<>();
+            spacing();
+            while (pos < length) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Statement statement() throws ScriptParseException {
+            Statement stmt;
+            char c = pos < length ? src.charAt(pos) : '\0';
+            switch (c) {
+                case 'n' -> stmt = newStatement();
+                case 'o' -> stmt = dataAlignStatement();
+                case 'd' -> stmt = defStatement();
+                case 's' -> stmt = setStatement();
+                case 'i' -> stmt = src.startsWith("int", pos) ? intDefStatement() : ifStatement();
+                case 'c' -> stmt = intCalStatement();
+                case 'w' -> stmt = whileStatement();
+                default -> throw error("expected statement");
+            }
+            // OptionalSemicolon
+            spacing();
+            if (pos < length && src.charAt(pos) == ';') {
+                pos++;
+            }
+            spacing();
+            return stmt;
+        }
+
+        private Statement newStatement() throws ScriptParseException {
+            keyword("new");
+            spacing();
+            String varName = identifier(false);
+            spacing();
+            expect('=');
+            spacing();
+
+            int mark = pos;
+            GqlQueryStatement gql = tryGqlQueryTail(varName);
+            if (gql != null) {
+                return gql;
+            }
+            pos = mark;
+            return pluginCallTail(varName);
+        }
+
+        private GqlQueryStatement tryGqlQueryTail(String varName) {
+            if (!src.startsWith("gql", pos)) {
+                return null;
+            }
+            pos += 3;
+            spacing();
+            if (!src.startsWith("query", pos)) {
+                return null;
+            }
+            pos += 5;
+            spacing();
+            int start = pos;
+            if (!skipBraces()) {
+                return null;
+            }
+            spacing();
+            // 与parboiled的match()一致，查询体包含其后的空白
+            return new GqlQueryStatement(varName, src.substring(start, pos));
+        }
+
+        private PluginCallStatement pluginCallTail(String varName) throws ScriptParseException {
+            String pluginName = identifier(true);
+            spacing();
+            expect('/');
+            spacing();
+            String funcName = identifier(false);
+            spacing();
+            expect('(');
+            spacing();
+            List<String> args = new ArrayList<>();
+            if (pos < length && isLetter(src.charAt(pos)) && !atReservedKeyword()) {
+                args.add(identifier(true));
+                while (true) {
+                    int mark = pos;
+                    spacing();
+                    if (pos < length && src.charAt(pos) == ',') {
+                        pos++;
+                        spacing();
+                        args.add(identifier(true));
+                    } else {
+                        pos = mark;
+                        break;
+                    }
+                }
+            }
+            spacing();
+            expect(')');
+            return new PluginCallStatement(varName, pluginName, funcName, args);
+        }
+
+        private DataAlignStatement dataAlignStatement() throws ScriptParseException {
+            keyword("output");
+            spacing();
+            String outputVar = identifier(true);
+            spacing();
+            expect('=');
+            spacing();
+            String sourceVar = identifier(false);
+            return new DataAlignStatement(outputVar, sourceVar);
+        }
+
+        private DefStatement defStatement() throws ScriptParseException {
+            keyword("def");
+            spacing();
+            String varName = identifier(false);
+            spacing();
+            expect('=');
+            spacing();
+            return new DefStatement(varName, value());
+        }
+
+        private SetStatement setStatement() throws ScriptParseException {
+            keyword("set");
+            spacing();
+            String varName = identifier(false);
+            spacing();
+            expect('=');
+            spacing();
+            return new SetStatement(varName, value());
+        }
+
+        private IntDefStatement intDefStatement() throws ScriptParseException {
+            keyword("int");
+            spacing();
+            String varName = identifier(false);
+            spacing();
+            expect('=');
+            spacing();
+            return new IntDefStatement(varName, intLiteral());
+        }
+
+        private IntCalStatement intCalStatement() throws ScriptParseException {
+            keyword("cal");
+            spacing();
+            String targetVar = identifier(false);
+            spacing();
+            expect('=');
+            spacing();
+            String sourceVar = identifier(false);
+            spacing();
+            char op = pos < length ? src.charAt(pos) : '\0';
+            if (op != '+' && op != '-') {
+                throw error("expected '+' or '-'");
+            }
+            pos++;
+            spacing();
+            int operand = intLiteral();
+            return new IntCalStatement(targetVar, sourceVar, op == '+' ? "+" : "-", operand);
+        }
+
+        private IfStatement ifStatement() throws ScriptParseException {
+            keyword("if");
+            spacing();
+            String condVar = condition();
+            return new IfStatement(condVar, block());
+        }
+
+        private WhileStatement whileStatement() throws ScriptParseException {
+            keyword("while");
+            spacing();
+            String condVar = condition();
+            return new WhileStatement(condVar, block());
+        }
+
+        private String condition() throws ScriptParseException {
+            expect('(');
+            spacing();
+            String condVar = identifier(false);
+            spacing();
+            expect(')');
+            spacing();
+            return condVar;
+        }
+
+        private Block block() throws ScriptParseException {
+            expect('{');
+            spacing();
+            List<Statement> statements = new ArrayList<>();
+            while (pos < length && src.charAt(pos) != '}') {
+                statements.add(statement());
+            }
+            expect('}');
+            spacing();
+            return new Block(statements);
+        }
+
+        private ValueNode value() throws ScriptParseException {
+            ValueNode value;
+            if (src.startsWith("true", pos)) {
+                pos += 4;
+                value = new ValueNode(Boolean.TRUE);
+            } else if (src.startsWith("false", pos)) {
+                pos += 5;
+                value = new ValueNode(Boolean.FALSE);
+            } else {
+                int start = pos;
+                if (pos < length && src.charAt(pos) == '-') {
+                    pos++;
+                }
+                int digitsStart = pos;
+                skipDigits();
+                boolean hasIntPart = pos > digitsStart;
+                if (pos < length && src.charAt(pos) == '.') {
+                    pos++;
+                    int fractionStart = pos;
+                    skipDigits();
+                    if (!hasIntPart && pos == fractionStart) {
+                        pos = start;
+                        throw error("expected value");
+                    }
+                    value = new ValueNode(Double.parseDouble(src.substring(start, pos)));
+                } else if (hasIntPart) {
+                    value = new ValueNode(parseInt(start, pos));
+                } else {
+                    pos = start;
+                    throw error("expected value");
+                }
+            }
+            spacing();
+            return value;
+        }
+
+        private int intLiteral() throws ScriptParseException {
+            int start = pos;
+            if (pos < length && src.charAt(pos) == '-') {
+                pos++;
+            }
+            int digitsStart = pos;
+            skipDigits();
+            if (pos == digitsStart) {
+                pos = start;
+                throw error("expected integer");
+            }
+            return parseInt(start, pos);
+        }
+
+        private int parseInt(int start, int end) throws ScriptParseException {
+            try {
+                return Integer.parseInt(src, start, end, 10);
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("integer out of range");
+            }
+        }
+
+        private String identifier(boolean allowDots) throws ScriptParseException {
+            if (pos >= length || !isLetter(src.charAt(pos)) || atReservedKeyword()) {
+                throw error("expected identifier");
+            }
+            int start = pos++;
+            while (pos < length) {
+                char c = src.charAt(pos);
+                if (isLetterOrDigit(c) || (allowDots && c == '.')) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            return src.substring(start, pos);
+        }
+
+        private boolean atReservedKeyword() {
+            for (String keyword : RESERVED_KEYWORDS) {
+                if (src.startsWith(keyword, pos)) {
+                    int end = pos + keyword.length();
+                    if (end >= length || !isLetterOrDigit(src.charAt(end))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void keyword(String keyword) throws ScriptParseException {
+            // 与parboiled的String()规则一致，只做前缀匹配
+            if (!src.startsWith(keyword, pos)) {
+                throw error("expected '" + keyword + "'");
+            }
+            pos += keyword.length();
+        }
+
+        private void expect(char c) throws ScriptParseException {
+            if (pos >= length || src.charAt(pos) != c) {
+                throw error("expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private boolean skipBraces() {
+            if (pos >= length || src.charAt(pos) != '{') {
+                return false;
+            }
+            int depth = 0;
+            while (pos < length) {
+                char c = src.charAt(pos++);
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}' && --depth == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void skipDigits() {
+            while (pos < length && isDigit(src.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private void spacing() {
+            while (pos < length) {
+                char c = src.charAt(pos);
+                if (c == '#') {
+                    pos++;
+                    while (pos < length) {
+                        char d = src.charAt(pos++);
+                        if (d == '\r' || d == '\n') {
+                            break;
+                        }
+                    }
+                } else if (c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n') {
+                    pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private ScriptParseException error(String message) {
+            int line = 1;
+            int lineStart = 0;
+            for (int i = 0; i < pos && i < length; i++) {
+                if (src.charAt(i) == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            String found = pos < length ? "'" + src.charAt(pos) + "'" : "end of input";
+            return new ScriptParseException(message + ", found " + found, line, pos - lineStart + 1);
+        }
+
+        private static boolean isLetter(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isLetterOrDigit(char c) {
+            return isLetter(c) || isDigit(c);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.scriptparser.parser;
+
+public class ScriptParseException extends Exception {
+
+    private final int line;
+    private final int column;
+
+    public ScriptParseException(String message, int line, int column) {
+        super("Parse error at line " + line + ", column " + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
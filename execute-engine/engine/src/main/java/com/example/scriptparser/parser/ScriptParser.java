@@ -0,0 +1,10 @@
+package com.example.scriptparser.parser;
+
+import com.example.scriptparser.ast.Statement;
+
+import java.util.List;
+
+public interface ScriptParser {
+
+    List<Statement> parse(String script) throws ScriptParseException;
+}
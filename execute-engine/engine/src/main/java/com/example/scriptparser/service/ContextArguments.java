@@ -0,0 +1,93 @@
+package com.example.scriptparser.service;
+
+import com.example.api.PluginArguments;
+import com.example.scriptparser.model.ExecutionContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 按参数槽位读取执行上下文的插件参数。JsonNode 类型的变量原样交给插件，整数等其他变量在读取时转换。
+ * 执行上下文中的节点只属于本次执行（共享缓存和合并请求交出的都是副本），所以这里不复制。
+ */
+class ContextArguments implements PluginArguments {
+
+    private final List<String> names;
+    private final int[] slots;
+    private final ExecutionContext context;
+    private final ObjectMapper objectMapper;
+    // 该插件的 ObjectReader 缓存，随插件一起卸载
+    private final Function<Class<?>, ObjectReader> readers;
+
+    ContextArguments(List<String> names, int[] slots, ExecutionContext context, ObjectMapper objectMapper,
+                     Function<Class<?>, ObjectReader> readers) {
+        this.names = names;
+        this.slots = slots;
+        this.context = context;
+        this.objectMapper = objectMapper;
+        this.readers = readers;
+    }
+
+    Object value(int index) {
+        return context.get(slots[index]);
+    }
+
+    // 作为结果缓存的键，不复制节点；存入缓存时由 PluginResultCache 复制
+    JsonNode[] toArray() {
+        JsonNode[] nodes = new JsonNode[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            nodes[i] = get(i);
+        }
+        return nodes;
+    }
+
+    @Override
+    public int size() {
+        return slots.length;
+    }
+
+    @Override
+    public String name(int index) {
+        return names.get(index);
+    }
+
+    @Override
+    public JsonNode get(int index) {
+        if (context.isInt(slots[index])) {
+            return IntNode.valueOf(context.getInt(slots[index]));
+        }
+        Object value = context.get(slots[index]);
+        if (value instanceof JsonNode node) {
+            return node;
+        }
+        return objectMapper.valueToTree(value);
+    }
+
+    @Override
+    public JsonNode get(String name) {
+        int index = names.indexOf(name);
+        return index < 0 ? null : get(index);
+    }
+
+    @Override
+    public <T> T get(String name, Class<T> type) throws IOException {
+        JsonNode node = get(name);
+        return node == null ? null : readers.apply(type).readValue(node);
+    }
+
+    @Override
+    public <T> T bind(Class<T> type) throws IOException {
+        // 只引用各参数的节点，不复制
+        ObjectNode node = objectMapper.createObjectNode();
+        for (int i = 0; i < slots.length; i++) {
+            node.set(names.get(i), get(i));
+        }
+        return readers.apply(type).readValue(node);
+    }
+}
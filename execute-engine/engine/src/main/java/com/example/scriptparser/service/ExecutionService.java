@@ -1,31 +1,44 @@
 package com.example.scriptparser.service;
 
-import com.example.api.HandlerService;
 import com.example.scriptparser.ast.*;
-import com.example.scriptparser.interpreter.Interpreter;
+import com.example.scriptparser.interpreter.CompiledProgram;
+import com.example.scriptparser.interpreter.ExecutionRuntime;
+import com.example.scriptparser.interpreter.Instruction;
+import com.example.scriptparser.interpreter.Program;
+import com.example.scriptparser.interpreter.StatementGraph;
+import com.example.scriptparser.interpreter.TieredCompiler;
+import com.example.scriptparser.model.CompiledScript;
 import com.example.scriptparser.model.ExecutionContext;
-import com.example.scriptparser.parser.GraphQLPlusParser;
+import com.example.scriptparser.model.GqlRequest;
+import com.example.scriptparser.model.GqlSchema;
+import com.example.scriptparser.model.GqlTemplate;
+import com.example.scriptparser.util.HashUtil;
+import com.example.scriptparser.util.InFlightCoalescer;
 import com.example.scriptparser.util.JsonNodeUtil;
+import com.example.scriptparser.util.KeyedBatcher;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.parboiled.Parboiled;
-import org.parboiled.parserunners.ReportingParseRunner;
-import org.parboiled.support.ParsingResult;
-import org.parboiled.errors.ErrorUtils;
-import org.pf4j.PluginManager;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 public class ExecutionService {
@@ -34,67 +47,360 @@ public class ExecutionService {
     private ScriptService scriptService;
 
     @Autowired
-    private PluginManager pluginManager;
+    private PluginService pluginService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private GatewayClient gatewayClient;
+
+    @Autowired
+    private ExecutorService statementExecutor;
+
+    @Autowired
+    private GqlResultCache gqlResultCache;
+
+    // 响应式执行时插件调用等阻塞操作使用的有界弹性调度器
+    @Autowired
+    private Scheduler blockingScheduler;
 
-    private static final String GRAPHQL_ENDPOINT = "http://192.168.0.204:4000/graphql";
-    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{([a-zA-Z0-9_.]+)\\}");
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // 请求体中 extensions.persistedQuery 比 "query" 字段多出的长度，不超过该长度的查询按全文发送更短
+    private static final int PERSISTED_QUERY_OVERHEAD =
+            "\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"\"}}".length() + 64 - "\"query\":\"\"".length();
+
+    // sequential | parallel
+    @Value("${engine.execution.mode:sequential}")
+    private String executionMode;
+
+    @Value("${engine.tiered.enabled:true}")
+    private boolean tieredEnabled;
+
+    @Value("${engine.tiered.compile-threshold:200}")
+    private int compileThreshold;
+
+    @Value("${engine.gql.merge.enabled:true}")
+    private boolean gqlMergeEnabled;
+
+    @Value("${engine.gql.merge.max-statements:10}")
+    private int gqlMergeMaxStatements;
+
+    // 批量执行 /execute/batch 一次最多的行数
+    @Value("${engine.batch.max-rows:10000}")
+    private int batchMaxRows;
+
+    // 批量执行时同一条 gql 语句对各行的查询按别名合并，每个请求最多包含的查询数
+    @Value("${engine.batch.gql-chunk-size:100}")
+    private int batchGqlChunkSize;
+
+    // 流式批量执行每次读入并按列执行的行数，决定流式执行时内存中最多的行数
+    @Value("${engine.batch.stream-chunk-rows:200}")
+    private int batchStreamChunkRows;
+
+    /**
+     * 流式执行时接收每条 output 语句的结果，在执行脚本的线程上同步调用，写出阻塞时脚本暂停执行。
+     */
+    public interface OutputListener {
+        void onOutput(String name, JsonNode value) throws IOException;
+    }
+
+    /**
+     * 流式批量执行时按行接收结果：{"row": 行号, "result": ...} 或 {"row": 行号, "error": ...}。
+     */
+    public interface RowListener {
+        void onRow(JsonNode row) throws IOException;
+    }
+
+    // 跨请求批量只对 gqlpk 中标记了 batch 选项的键生效
+    @Value("${engine.gql.batch.enabled:true}")
+    private boolean gqlBatchEnabled;
+
+    @Value("${engine.gql.batch.window-ms:5}")
+    private long gqlBatchWindowMillis;
+
+    @Value("${engine.gql.batch.max-size:50}")
+    private int gqlBatchMaxSize;
+
+    private final KeyedBatcher<String, GqlRequest, JsonNode> gqlBatcher = new KeyedBatcher<>(this::sendBatch);
+
+    // 上传 gqlpk 时内省网关schema，把模板预编译为带变量的固定查询
+    @Value("${engine.gql.variables.enabled:true}")
+    private boolean gqlVariablesEnabled;
+
+    // 文本固定的查询按持久化查询（APQ）只发送哈希，网关返回 PersistedQueryNotFound 时再发送全文
+    @Value("${engine.gql.apq.enabled:true}")
+    private boolean gqlApqEnabled;
+
+    // 网关返回 PersistedQueryNotSupported 后不再发送哈希
+    private volatile boolean apqSupported = true;
+
+    @Value("${engine.gql.coalesce.enabled:true}")
+    private boolean gqlCoalesceEnabled;
+
+    // 被合并的调用方各自拿到一份响应，不共享同一棵树
+    private final InFlightCoalescer<GqlRequest, JsonNode> gqlCoalescer = new InFlightCoalescer<>(JsonNode::deepCopy);
+
+    private final LongAdder interpretedRuns = new LongAdder();
+    private final LongAdder compiledRuns = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder compileFailures = new LongAdder();
+    private final LongAdder parallelRuns = new LongAdder();
+    private final LongAdder reactiveRuns = new LongAdder();
+    private final LongAdder batchRuns = new LongAdder();
+    private final LongAdder batchRows = new LongAdder();
+    private final LongAdder gqlRequests = new LongAdder();
+    private final LongAdder mergedRequests = new LongAdder();
+    private final LongAdder mergedStatements = new LongAdder();
+    private final LongAdder mergeFallbacks = new LongAdder();
+    private final LongAdder apqHits = new LongAdder();
+    private final LongAdder apqMisses = new LongAdder();
+    private final LongAdder apqRegistrations = new LongAdder();
+    private final LongAdder apqBytesSaved = new LongAdder();
+
     public JsonNode executeScript(String scriptName, Map<String, String> initParams) throws Exception {
-        String script = scriptService.getGqlpScript(scriptName);
+        return executeScript(scriptName, initParams, null);
+    }
+
+    /**
+     * 与 executeScript 相同，listener 不为 null 时每条 output 语句执行后立即交给 listener。
+     */
+    public JsonNode executeScript(String scriptName, Map<String, String> initParams, OutputListener listener)
+            throws Exception {
+        // 脚本在上传时已解析，这里直接取缓存的AST
+        CompiledScript script = scriptService.getCompiledScript(scriptName);
         if (script == null) {
             throw new Exception("Script " + scriptName + " not found.");
         }
+        Program program = script.getProgram();
+
+        // 执行脚本
+        ScriptExecutor executor = new ScriptExecutor(listener);
+        return executor.execute(program, newContext(program, initParams));
+    }
+
+    /**
+     * 不阻塞的 executeScript：等待网关响应时不占用线程，插件调用在有界弹性调度器上执行。
+     * 结果在订阅后产生，语句按顺序执行，不受 executionMode 和分层编译影响。
+     */
+    public Mono<JsonNode> executeScriptReactive(String scriptName, Map<String, String> initParams) {
+        return Mono.defer(() -> {
+            CompiledScript script = scriptService.getCompiledScript(scriptName);
+            if (script == null) {
+                return Mono.error(new Exception("Script " + scriptName + " not found."));
+            }
+            Program program = script.getProgram();
+            return new ScriptExecutor().executeReactive(program, newContext(program, initParams));
+        });
+    }
 
-        // 使用parboiled解析器
-        GraphQLPlusParser parser = Parboiled.createParser(GraphQLPlusParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(parser.Script());
-        ParsingResult<Object> result = runner.run(script);
+    // 创建执行帧并设置初始参数
+    private ExecutionContext newContext(Program program, Map<String, String> initParams) {
+        ExecutionContext context = new ExecutionContext(program.getLayout());
+        for (Map.Entry<String, String> entry : initParams.entrySet()) {
+            context.setVariable(entry.getKey(), JsonNodeUtil.createValueNode(entry.getValue()));
+        }
+        return context;
+    }
 
-        if (result.hasErrors()) {
-            throw new Exception("Parse errors: " + ErrorUtils.printParseErrors(result));
+    /**
+     * 对多组初始参数按列执行同一个脚本：顶层的每条 gql 语句对所有行合并发送，每个插件调用对所有行批量调用，
+     * 其余语句逐行执行。某一行出错只影响该行，返回与 initParams 一一对应的 {"result": ...} 或 {"error": ...}。
+     */
+    public ArrayNode executeBatch(String scriptName, List<Map<String, String>> initParams) throws Exception {
+        CompiledScript script = scriptService.getCompiledScript(scriptName);
+        if (script == null) {
+            throw new Exception("Script " + scriptName + " not found.");
         }
+        if (initParams.size() > batchMaxRows) {
+            throw new Exception("批量执行最多 " + batchMaxRows + " 行，请求为 " + initParams.size() + " 行。");
+        }
+        batchRuns.increment();
+        batchRows.add(initParams.size());
+        return new BatchExecutor(script.getProgram(), initParams).execute();
+    }
 
-        Object parseResultValue = result.resultValue;
-        if (!(parseResultValue instanceof List)) {
-            throw new Exception("Parsing failed: expected List<Statement>");
+    /**
+     * 流式批量执行：每次从 initParams 读入 stream-chunk-rows 行按列执行，执行完即交给 listener，再读下一块。
+     * 不限制总行数，内存中只保留一块；listener 写出阻塞时不再读入新的行。
+     */
+    public void executeBatch(String scriptName, Iterator<Map<String, String>> initParams, RowListener listener)
+            throws Exception {
+        CompiledScript script = scriptService.getCompiledScript(scriptName);
+        if (script == null) {
+            throw new Exception("Script " + scriptName + " not found.");
+        }
+        batchRuns.increment();
+        List<Map<String, String>> chunk = new ArrayList<>();
+        int row = 0;
+        while (initParams.hasNext()) {
+            chunk.add(initParams.next());
+            if (chunk.size() < batchStreamChunkRows && initParams.hasNext()) {
+                continue;
+            }
+            batchRows.add(chunk.size());
+            ArrayNode results = new BatchExecutor(script.getProgram(), chunk).execute();
+            for (JsonNode result : results) {
+                ObjectNode line = objectMapper.createObjectNode();
+                line.put("row", row++);
+                line.setAll((ObjectNode) result);
+                listener.onRow(line);
+            }
+            chunk = new ArrayList<>();
         }
+    }
 
-        @SuppressWarnings("unchecked")
-        List<Statement> statements = (List<Statement>) parseResultValue;
+    public Map<String, Object> getTieredStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", tieredEnabled);
+        stats.put("compileThreshold", compileThreshold);
+        stats.put("interpretedRuns", interpretedRuns.sum());
+        stats.put("compiledRuns", compiledRuns.sum());
+        stats.put("compilations", compilations.sum());
+        stats.put("compileFailures", compileFailures.sum());
+        stats.put("parallelRuns", parallelRuns.sum());
+        stats.put("reactiveRuns", reactiveRuns.sum());
+        stats.put("batchRuns", batchRuns.sum());
+        stats.put("batchRows", batchRows.sum());
+        return stats;
+    }
 
-        // 创建执行上下文并设置初始参数
-        ExecutionContext context = new ExecutionContext();
-        for (Map.Entry<String, String> entry : initParams.entrySet()) {
-            context.setVariable(entry.getKey(), JsonNodeUtil.createValueNode(entry.getValue()));
+    public Map<String, Object> getGqlStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("variablesEnabled", gqlVariablesEnabled);
+        stats.put("mergeEnabled", gqlMergeEnabled);
+        stats.put("requests", gqlRequests.sum());
+        stats.put("mergedRequests", mergedRequests.sum());
+        stats.put("mergedStatements", mergedStatements.sum());
+        stats.put("mergeFallbacks", mergeFallbacks.sum());
+        stats.put("batchEnabled", gqlBatchEnabled);
+        stats.put("batching", gqlBatcher.getStats());
+        Map<String, Object> apq = new LinkedHashMap<>();
+        apq.put("enabled", gqlApqEnabled);
+        apq.put("supported", apqSupported);
+        apq.put("hits", apqHits.sum());
+        apq.put("misses", apqMisses.sum());
+        apq.put("registrations", apqRegistrations.sum());
+        apq.put("bytesSaved", apqBytesSaved.sum());
+        stats.put("apq", apq);
+        stats.put("coalesceEnabled", gqlCoalesceEnabled);
+        stats.put("coalescing", gqlCoalescer.getStats());
+        return stats;
+    }
+
+    /**
+     * 内省网关schema，供上传 gqlpk 时预编译模板；未开启或内省失败时返回 null，模板按拼接方式执行。
+     */
+    public GqlSchema fetchGatewaySchema() {
+        if (!gqlVariablesEnabled) {
+            return null;
+        }
+        try {
+            JsonNode response = sendGraphQLQuery(new GqlRequest(GqlSchema.INTROSPECTION_QUERY), true);
+            GqlSchema schema = GqlSchema.fromIntrospection(response.get("data"));
+            if (schema == null) {
+                System.err.println("GraphQL introspection returned no schema: " + response.get("errors"));
+            }
+            return schema;
+        } catch (IOException e) {
+            System.err.println("GraphQL introspection failed, gqlpk templates will be spliced: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 上传 gqlpk 后把预编译的只读查询注册到网关：按APQ协议同时发送全文和哈希，不带变量值。
+     * 网关在校验通过后保存查询，缺少变量值导致的错误忽略；mutation 不预先注册，首次执行时按未命中处理。
+     */
+    public void registerPersistedQueries(Collection<String> queryKeys) {
+        if (!gqlApqEnabled || !apqSupported) {
+            return;
+        }
+        for (String queryKey : queryKeys) {
+            GqlTemplate template = scriptService.getGqlpkQuery(queryKey);
+            if (template == null || template.getDocument() == null || !template.isReadOnly()
+                    || !isWorthPersisting(template.getDocument().query())) {
+                continue;
+            }
+            try {
+                ObjectNode body = objectMapper.createObjectNode();
+                body.put("query", template.getDocument().query());
+                putPersistedQuery(body, template.getDocument().hash());
+                JsonNode response = postGraphQLRequest(body);
+                if (isPersistedQueryError(response, "PERSISTED_QUERY_NOT_SUPPORTED", "PersistedQueryNotSupported")) {
+                    disableApq();
+                    return;
+                }
+                apqRegistrations.increment();
+            } catch (IOException e) {
+                System.err.println("Failed to register persisted query for GraphQL Key " + queryKey + ": " + e.getMessage());
+            }
         }
+    }
 
-        // 执行脚本
-        ScriptExecutor executor = new ScriptExecutor();
-        return executor.execute(statements, context);
+    // 脚本先由解释器执行，调用次数达到阈值后编译为第二层；编译失败则继续使用解释器
+    private CompiledProgram tierUp(Program program) {
+        if (!tieredEnabled) {
+            return null;
+        }
+        CompiledProgram compiled = program.getCompiled();
+        if (compiled != null) {
+            return compiled;
+        }
+        if (program.recordInvocation() != compileThreshold) {
+            return null;
+        }
+        try {
+            compiled = TieredCompiler.compile(program);
+            program.setCompiled(compiled);
+            compilations.increment();
+            return compiled;
+        } catch (Exception | LinkageError e) {
+            compileFailures.increment();
+            System.err.println("Tiered compilation failed, falling back to interpreter: " + e);
+            return null;
+        }
     }
 
-    private class ScriptExecutor {
-        private String finalOutputKey = null;
-        private long totalGqlQueryDuration = 0;
-        private int gqlNum = 0;
-        private int pluginNum = 0;
+    private class ScriptExecutor implements ExecutionRuntime {
+        // 并行模式下 output 语句之间保持顺序，finalOutputSlot 的写入由依赖关系保证可见性
+        private volatile int finalOutputSlot = -1;
+        private final AtomicLong totalGqlQueryDuration = new AtomicLong();
+        private final AtomicInteger gqlNum = new AtomicInteger();
+        private final AtomicInteger pluginNum = new AtomicInteger();
+        // 第一次插件调用时固定的插件代，执行结束后释放；重载插件不影响执行中的脚本
+        private final AtomicReference<PluginGeneration> pluginGeneration = new AtomicReference<>();
+        // 流式执行时接收 output 语句的结果，为 null 时只保留最后一条
+        private final OutputListener listener;
+        private ExecutionContext context;
+
+        ScriptExecutor() {
+            this(null);
+        }
+
+        ScriptExecutor(OutputListener listener) {
+            this.listener = listener;
+        }
 
-        public JsonNode execute(List<Statement> statements, ExecutionContext context) throws Exception {
-            for (Statement stmt : statements) {
-                executeStatement(stmt, context);
+        public JsonNode execute(Program program, ExecutionContext context) throws Exception {
+            this.context = context;
+            try {
+                run(program, context);
+            } finally {
+                PluginGeneration generation = pluginGeneration.get();
+                if (generation != null) {
+                    generation.release();
+                }
             }
 
             System.out.println("总gql查询时间: " + totalGqlQueryDuration + " 毫秒");
+            return output(context);
+        }
 
-            if (finalOutputKey == null || context.getVariable(finalOutputKey) == null) {
+        private JsonNode output(ExecutionContext context) throws Exception {
+            if (finalOutputSlot < 0 || context.get(finalOutputSlot) == null) {
                 throw new Exception("Final output variable not set.");
             }
 
-            Object finalOutput = context.getVariable(finalOutputKey);
+            Object finalOutput = context.get(finalOutputSlot);
             if (finalOutput instanceof JsonNode) {
                 return (JsonNode) finalOutput;
             } else {
@@ -102,204 +408,865 @@ public class ExecutionService {
             }
         }
 
-        private void executeStatement(Statement stmt, ExecutionContext context) throws Exception {
-            if (stmt instanceof GqlQueryStatement) {
-                executeGqlQuery((GqlQueryStatement) stmt, context);
-            } else if (stmt instanceof DataAlignStatement) {
-                executeDataAlign((DataAlignStatement) stmt, context);
-            } else if (stmt instanceof PluginCallStatement) {
-                executePluginCall((PluginCallStatement) stmt, context);
-            } else if (stmt instanceof DefStatement) {
-                executeDef((DefStatement) stmt, context);
-            } else if (stmt instanceof SetStatement) {
-                executeSet((SetStatement) stmt, context);
-            } else if (stmt instanceof IntDefStatement) {
-                executeIntDef((IntDefStatement) stmt, context);
-            } else if (stmt instanceof IntCalStatement) {
-                executeIntCal((IntCalStatement) stmt, context);
-            } else if (stmt instanceof IfStatement) {
-                executeIf((IfStatement) stmt, context);
-            } else if (stmt instanceof WhileStatement) {
-                executeWhile((WhileStatement) stmt, context);
-            } else if (stmt instanceof Block) {
-                Block block = (Block) stmt;
-                for (Statement blockStmt : block.getStatements()) {
-                    executeStatement(blockStmt, context);
-                }
+        private void run(Program program, ExecutionContext context) throws Exception {
+            if ("parallel".equals(executionMode)) {
+                parallelRuns.increment();
+                executeGraph(program, context);
             } else {
-                throw new Exception("Unknown statement type: " + stmt.getClass().getName());
+                CompiledProgram compiled = tierUp(program);
+                if (compiled != null) {
+                    compiledRuns.increment();
+                    compiled.run(this, context);
+                } else {
+                    interpretedRuns.increment();
+                    executeBlock(program.getInstructions(), context);
+                }
             }
         }
 
-        private void executeGqlQuery(GqlQueryStatement stmt, ExecutionContext context) throws Exception {
-            gqlNum++;
-            long startTime = System.currentTimeMillis();
+        // 并行模式下多个插件调用可能同时首次固定，只保留一个
+        private PluginGeneration pinPluginGeneration() {
+            PluginGeneration generation = pluginGeneration.get();
+            if (generation != null) {
+                return generation;
+            }
+            PluginGeneration acquired = pluginService.acquire();
+            if (pluginGeneration.compareAndSet(null, acquired)) {
+                return acquired;
+            }
+            acquired.release();
+            return pluginGeneration.get();
+        }
 
-            String queryKey = extractQueryKey(stmt.getQueryBody());
-            String queryTemplate = scriptService.getGqlpkQuery(queryKey);
-            if (queryTemplate == null) {
-                throw new Exception("GraphQL Key " + queryKey + " not found.");
+        // 按依赖图并发执行顶层语句，gql查询和插件调用提交到线程池，其余语句在依赖完成的线程上直接执行。
+        // 依赖图每个 Program 只构建一次，gqlpk 模板更新后重新构建
+        private void executeGraph(Program program, ExecutionContext context) throws Exception {
+            long templatesVersion = scriptService.getGqlpkVersion();
+            StatementGraph graph = program.getGraph(templatesVersion);
+            if (graph == null) {
+                graph = StatementGraph.build(program.getInstructions(), program.getLayout(), insn -> {
+                    GqlTemplate template = scriptService.getGqlpkQuery(insn.getQueryKey());
+                    return template == null ? List.of() : template.getPlaceholders();
+                });
+                program.setGraph(templatesVersion, graph);
+            }
+
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[graph.size()];
+            for (int i = 0; i < graph.size(); i++) {
+                Instruction insn = graph.getNode(i);
+                int[] deps = graph.getDependencies(i);
+                CompletableFuture<?> ready;
+                if (deps.length == 0) {
+                    ready = CompletableFuture.completedFuture(null);
+                } else if (deps.length == 1) {
+                    ready = futures[deps[0]];
+                } else {
+                    CompletableFuture<?>[] depFutures = new CompletableFuture<?>[deps.length];
+                    for (int d = 0; d < deps.length; d++) {
+                        depFutures[d] = futures[deps[d]];
+                    }
+                    ready = CompletableFuture.allOf(depFutures);
+                }
+
+                Runnable task = () -> {
+                    try {
+                        executeInstruction(insn, context);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                };
+                boolean blocking = insn.getKind() == Instruction.Kind.GQL_QUERY
+                        || insn.getKind() == Instruction.Kind.PLUGIN_CALL;
+                futures[i] = blocking ? ready.thenRunAsync(task, statementExecutor) : ready.thenRun(task);
+            }
+
+            try {
+                CompletableFuture.allOf(futures).join();
+            } catch (CompletionException ignored) {
+                // 按语句顺序报告第一个失败
+            }
+            for (CompletableFuture<?> future : futures) {
+                if (future.isCompletedExceptionally()) {
+                    try {
+                        future.join();
+                    } catch (CompletionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof CompletionException && cause.getCause() != null) {
+                            cause = cause.getCause();
+                        }
+                        if (cause instanceof Exception ex) {
+                            throw ex;
+                        }
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private void executeBlock(List<Instruction> instructions, ExecutionContext context) throws Exception {
+            for (int i = 0, n = instructions.size(); i < n; ) {
+                int end = Instruction.gqlRunEnd(instructions, i);
+                if (end - i > 1) {
+                    executeGqlQueries(instructions.subList(i, end), context);
+                    i = end;
+                } else {
+                    executeInstruction(instructions.get(i++), context);
+                }
+            }
+        }
+
+        private void executeInstruction(Instruction insn, ExecutionContext context) throws Exception {
+            switch (insn.getKind()) {
+                case GQL_QUERY -> executeGqlQuery(insn, context);
+                case DATA_ALIGN -> executeDataAlign(insn, context);
+                case PLUGIN_CALL -> executePluginCall(insn, context);
+                case ASSIGN -> context.set(insn.getTarget(), insn.getConstant());
+                case INT_DEF -> context.setInt(insn.getTarget(), insn.getIntValue());
+                case INT_CAL -> executeIntCal(insn, context);
+                case IF -> executeIf(insn, context);
+                case WHILE -> executeWhile(insn, context);
+                case BLOCK -> executeBlock(insn.getBody(), context);
             }
+        }
+
+        @Override
+        public void recordOutput(int slot) {
+            finalOutputSlot = slot;
+            if (listener != null) {
+                Object value = context.get(slot);
+                try {
+                    listener.onOutput(context.getLayout().nameOf(slot),
+                            value instanceof JsonNode node ? node : objectMapper.valueToTree(value));
+                } catch (IOException e) {
+                    // 客户端断开时停止执行
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
 
-            // 替换变量
-            String executableQuery = replaceVariables(queryTemplate, context);
+        @Override
+        public void executeGqlQuery(Instruction insn, ExecutionContext context) throws Exception {
+            gqlNum.incrementAndGet();
+            long startTime = System.currentTimeMillis();
+
+            // 绑定变量
+            GqlTemplate template = getTemplate(insn);
+            GqlRequest request = bind(template, context);
 
             // 发送请求到 Apollo Server
-            JsonNode response = sendGraphQLQuery(executableQuery);
+            executeSingle(insn, template, request, context);
 
-            context.setVariable(stmt.getVariableName(), response.get("data"));
             long endTime = System.currentTimeMillis();
-            totalGqlQueryDuration += (endTime - startTime);
+            totalGqlQueryDuration.addAndGet(endTime - startTime);
         }
 
-        private void executeDataAlign(DataAlignStatement stmt, ExecutionContext context) throws Exception {
-            Object sourceValue = context.getVariable(stmt.getSourceVariable());
-            if (sourceValue == null) {
-                throw new Exception("Source variable " + stmt.getSourceVariable() + " not found.");
+        @Override
+        public void executeGqlQueries(List<Instruction> run, ExecutionContext context) throws Exception {
+            if (!gqlMergeEnabled) {
+                for (Instruction insn : run) {
+                    executeGqlQuery(insn, context);
+                }
+                return;
+            }
+            for (int i = 0; i < run.size(); ) {
+                i = executeMergedBatch(run, i, context);
             }
-            context.setVariable(stmt.getOutputVariable(), sourceValue);
-            finalOutputKey = stmt.getOutputVariable();
         }
 
-        private void executePluginCall(PluginCallStatement stmt, ExecutionContext context) throws Exception {
-            pluginNum++;
-            long startTime = System.currentTimeMillis();
+        // 从 start 开始取出一批互不依赖的查询合并为一个请求，返回下一批的起点
+        private int executeMergedBatch(List<Instruction> run, int start, ExecutionContext context) throws Exception {
+            MergedBatch batch = planMergedBatch(run, start, context);
+            List<Integer> unsent = batch.unsent;
+            JsonNode[] merged = unsent.size() > 1 ? sendMerged(batch.parts) : null;
+            for (int u = 0; u < unsent.size(); u++) {
+                int i = unsent.get(u);
+                batch.responses.set(i, merged != null ? merged[u] : send(batch.templates.get(i), batch.requests.get(i)));
+            }
+            finishMergedBatch(batch, context);
+            return batch.next;
+        }
 
-            // 准备参数
-            Map<String, Object> input = new HashMap<>();
-            for (String param : stmt.getArguments()) {
-                Object value = context.getVariable(param);
-                if (value == null) {
-                    throw new Exception("Variable not found for parameter: " + param);
+        // 查询的占位符引用了本批前面语句的结果时结束本批，保证与逐条执行的结果一致；命中结果缓存的查询不需要发送
+        private MergedBatch planMergedBatch(List<Instruction> run, int start, ExecutionContext context) throws Exception {
+            MergedBatch batch = new MergedBatch();
+            Set<Integer> written = new HashSet<>();
+            int next = start;
+            while (next < run.size() && batch.statements.size() < gqlMergeMaxStatements) {
+                Instruction insn = run.get(next);
+                GqlTemplate template = getTemplate(insn);
+                if (!batch.statements.isEmpty() && readsAny(template, context, written)) {
+                    break;
+                }
+                GqlRequest request = bind(template, context);
+                String cacheKey = cacheKey(template, context);
+                JsonNode cached = cacheKey == null ? null : gqlResultCache.get(cacheKey);
+                GqlQueryMerger.Part part = null;
+                if (cached == null) {
+                    // 开启跨请求批量的键交给批处理器，不在请求内合并
+                    part = isBatched(template) ? null : GqlQueryMerger.parse(request);
+                    if (part == null && !batch.unsent.isEmpty()) {
+                        break;
+                    }
+                    batch.unsent.add(batch.statements.size());
+                    batch.parts.add(part);
+                }
+                batch.statements.add(insn);
+                batch.templates.add(template);
+                batch.requests.add(request);
+                batch.cacheKeys.add(cacheKey);
+                batch.responses.add(cached);
+                written.add(insn.getTarget());
+                next++;
+                if (cached == null && part == null) {
+                    // 无法合并的查询单独发送
+                    break;
                 }
-                input.put(param, value);
             }
+            gqlNum.addAndGet(batch.statements.size());
+            batch.next = next;
+            return batch;
+        }
 
-            JsonNode inputNode = objectMapper.valueToTree(input);
+        private void finishMergedBatch(MergedBatch batch, ExecutionContext context) throws Exception {
+            for (int i : batch.unsent) {
+                cacheResponse(batch.templates.get(i), batch.cacheKeys.get(i), batch.responses.get(i));
+            }
+            for (int i = 0; i < batch.statements.size(); i++) {
+                storeResponse(batch.statements.get(i), batch.responses.get(i), context);
+            }
+            totalGqlQueryDuration.addAndGet(System.currentTimeMillis() - batch.startTime);
+        }
 
-            // 查找并调用插件
-            List<HandlerService> extensions = pluginManager.getExtensions(HandlerService.class);
-            Optional<HandlerService> targetExtensionOpt = extensions.stream()
-                    .filter(extension -> stmt.getFunctionName().equals(extension.getName()))
-                    .findFirst();
+        private void executeSingle(Instruction insn, GqlTemplate template, GqlRequest request,
+                                   ExecutionContext context) throws Exception {
+            String cacheKey = cacheKey(template, context);
+            JsonNode response = cacheKey == null ? null : gqlResultCache.get(cacheKey);
+            if (response == null) {
+                response = send(template, request);
+                cacheResponse(template, cacheKey, response);
+            }
+            storeResponse(insn, response, context);
+        }
 
-            if (targetExtensionOpt.isEmpty()) {
-                throw new Exception("插件 \"" + stmt.getFunctionName() + "\" 未找到或未加载。");
+        // gql 语句的错误只记录日志，data 照常写入变量
+        private void storeResponse(Instruction insn, JsonNode response, ExecutionContext context) {
+            JsonNode errors = response.get("errors");
+            if (errors != null && errors.isArray() && !errors.isEmpty()) {
+                GqlQueryStatement stmt = (GqlQueryStatement) insn.getStatement();
+                System.err.println("GraphQL errors for " + stmt.getVariableName() + " (" + insn.getQueryKey() + "): " + errors);
             }
+            context.set(insn.getTarget(), response.get("data"));
+        }
 
-            HandlerService handlerService = targetExtensionOpt.get();
-            JsonNode result = handlerService.handle(inputNode);
+        private GqlTemplate getTemplate(Instruction insn) throws Exception {
+            String queryKey = insn.getQueryKey();
+            GqlTemplate queryTemplate = scriptService.getGqlpkQuery(queryKey);
+            if (queryTemplate == null) {
+                throw new Exception("GraphQL Key " + queryKey + " not found.");
+            }
+            return queryTemplate;
+        }
 
-            // 插件返回一个kv对，取第一个
-            Iterator<String> fieldNames = result.fieldNames();
-            if (fieldNames.hasNext()) {
-                String key = fieldNames.next();
-                JsonNode valueNode = result.get(key);
-                context.setVariable(stmt.getVariableName(), valueNode);
-            } else {
-                throw new Exception("插件返回结果为空。");
+        private boolean readsAny(GqlTemplate template, ExecutionContext context, Set<Integer> slots) {
+            for (String name : template.getPlaceholders()) {
+                int slot = context.getLayout().indexOf(name);
+                if (slot >= 0 && slots.contains(slot)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void executeDataAlign(Instruction insn, ExecutionContext context) throws Exception {
+            Object sourceValue = context.get(insn.getSource());
+            if (sourceValue == null) {
+                throw new Exception("Source variable " + context.getLayout().nameOf(insn.getSource()) + " not found.");
+            }
+            context.set(insn.getTarget(), sourceValue);
+            recordOutput(insn.getTarget());
+        }
+
+        @Override
+        public void executePluginCall(Instruction insn, ExecutionContext context) throws Exception {
+            pluginNum.incrementAndGet();
+            long startTime = System.currentTimeMillis();
+            PluginCallStatement stmt = (PluginCallStatement) insn.getStatement();
+
+            // 参数按槽位直接传给插件，不复制
+            int[] arguments = insn.getArguments();
+            for (int i = 0; i < arguments.length; i++) {
+                if (context.get(arguments[i]) == null) {
+                    throw new Exception("Variable not found for parameter: " + stmt.getArguments().get(i));
+                }
             }
 
+            // 查找插件并在该插件的线程池中调用
+            PluginFunction function = pinPluginGeneration().find(stmt.getQualifiedName(), stmt.getFunctionName());
+            context.set(insn.getTarget(), function.call(stmt.getArguments(), arguments, context));
+
             long endTime = System.currentTimeMillis();
         }
 
-        private void executeDef(DefStatement stmt, ExecutionContext context) {
-            Object value = stmt.getValue().getValue();
-            JsonNode jsonValue = JsonNodeUtil.createValueNode(value);
-            context.setVariable(stmt.getVariableName(), jsonValue);
+        /**
+         * 响应式执行：语句按顺序组成 Mono 流水线。gql 查询经 GatewayClient 异步发送，等待响应时不占用线程；
+         * 插件调用在有界弹性调度器上执行。不编译为第二层，也不按依赖图并行。
+         */
+        Mono<JsonNode> executeReactive(Program program, ExecutionContext context) {
+            this.context = context;
+            reactiveRuns.increment();
+            return defer(() -> executeBlockAsync(program.getInstructions(), 0, context))
+                    .then(Mono.fromCallable(() -> {
+                        System.out.println("总gql查询时间: " + totalGqlQueryDuration + " 毫秒");
+                        return output(context);
+                    }))
+                    .doFinally(signal -> {
+                        PluginGeneration generation = pluginGeneration.get();
+                        if (generation != null) {
+                            generation.release();
+                        }
+                    });
+        }
+
+        // 从 from 开始执行语句，全部同步完成时返回 null；遇到需要等待的语句时返回在其完成后继续执行剩余语句的 Mono。
+        // 同步完成的语句不经过 Mono，长循环不会加深调用栈
+        private Mono<Void> executeBlockAsync(List<Instruction> instructions, int from, ExecutionContext context)
+                throws Exception {
+            for (int i = from, n = instructions.size(); i < n; ) {
+                int end = Instruction.gqlRunEnd(instructions, i);
+                Mono<Void> pending;
+                if (end - i > 1) {
+                    pending = executeGqlQueriesAsync(instructions.subList(i, end), 0, context);
+                    i = end;
+                } else {
+                    pending = executeInstructionAsync(instructions.get(i++), context);
+                }
+                if (pending != null) {
+                    int next = i;
+                    return pending.then(defer(() -> executeBlockAsync(instructions, next, context)));
+                }
+            }
+            return null;
         }
 
-        private void executeSet(SetStatement stmt, ExecutionContext context) {
-            Object value = stmt.getValue().getValue();
-            JsonNode jsonValue = JsonNodeUtil.createValueNode(value);
-            context.setVariable(stmt.getVariableName(), jsonValue);
+        private Mono<Void> executeInstructionAsync(Instruction insn, ExecutionContext context) throws Exception {
+            return switch (insn.getKind()) {
+                case GQL_QUERY -> executeGqlQueryAsync(insn, context);
+                case PLUGIN_CALL -> defer(() -> {
+                    executePluginCall(insn, context);
+                    return null;
+                }).subscribeOn(blockingScheduler);
+                case IF -> context.evaluateCondition(insn.getSource()) ? executeBlockAsync(insn.getBody(), 0, context) : null;
+                case WHILE -> executeWhileAsync(insn, context, 0);
+                case BLOCK -> executeBlockAsync(insn.getBody(), 0, context);
+                default -> {
+                    executeInstruction(insn, context);
+                    yield null;
+                }
+            };
         }
 
-        private void executeIntDef(IntDefStatement stmt, ExecutionContext context) {
-            context.setVariable(stmt.getVariableName(), stmt.getValue());
+        private Mono<Void> executeWhileAsync(Instruction insn, ExecutionContext context, int iteration) throws Exception {
+            while (context.evaluateCondition(insn.getSource())) {
+                iteration++;
+                if (iteration > Instruction.MAX_LOOP_ITERATIONS) {
+                    throw new Exception("While loop exceeded max iterations");
+                }
+                Mono<Void> pending = executeBlockAsync(insn.getBody(), 0, context);
+                if (pending != null) {
+                    int done = iteration;
+                    return pending.then(defer(() -> executeWhileAsync(insn, context, done)));
+                }
+            }
+            return null;
         }
 
-        private void executeIntCal(IntCalStatement stmt, ExecutionContext context) throws Exception {
-            Object sourceValueObj = context.getVariable(stmt.getSourceVariable());
-            if (!(sourceValueObj instanceof Integer)) {
-                throw new Exception("Variable " + stmt.getSourceVariable() + " is not an integer.");
+        // 命中结果缓存时同步完成
+        private Mono<Void> executeGqlQueryAsync(Instruction insn, ExecutionContext context) throws Exception {
+            gqlNum.incrementAndGet();
+            long startTime = System.currentTimeMillis();
+            GqlTemplate template = getTemplate(insn);
+            GqlRequest request = bind(template, context);
+            String cacheKey = cacheKey(template, context);
+            JsonNode cached = cacheKey == null ? null : gqlResultCache.get(cacheKey);
+            if (cached != null) {
+                storeResponse(insn, cached, context);
+                totalGqlQueryDuration.addAndGet(System.currentTimeMillis() - startTime);
+                return null;
             }
+            return Mono.fromFuture(() -> sendAsync(template, request), true)
+                    .flatMap(response -> defer(() -> {
+                        cacheResponse(template, cacheKey, response);
+                        storeResponse(insn, response, context);
+                        totalGqlQueryDuration.addAndGet(System.currentTimeMillis() - startTime);
+                        return null;
+                    }));
+        }
 
-            int sourceValue = (Integer) sourceValueObj;
-            int result;
-            switch (stmt.getOperator()) {
-                case "+":
-                    result = sourceValue + stmt.getOperand();
-                    break;
-                case "-":
-                    result = sourceValue - stmt.getOperand();
-                    break;
-                default:
-                    throw new Exception("Unsupported operator: " + stmt.getOperator());
+        private Mono<Void> executeGqlQueriesAsync(List<Instruction> run, int from, ExecutionContext context)
+                throws Exception {
+            for (int i = from; i < run.size(); ) {
+                Mono<Void> pending;
+                if (gqlMergeEnabled) {
+                    MergedBatch batch = planMergedBatch(run, i, context);
+                    i = batch.next;
+                    pending = executeMergedBatchAsync(batch, context);
+                } else {
+                    pending = executeGqlQueryAsync(run.get(i++), context);
+                }
+                if (pending != null) {
+                    int next = i;
+                    return pending.then(defer(() -> executeGqlQueriesAsync(run, next, context)));
+                }
             }
+            return null;
+        }
 
-            context.setVariable(stmt.getTargetVariable(), result);
+        private Mono<Void> executeMergedBatchAsync(MergedBatch batch, ExecutionContext context) throws Exception {
+            if (batch.unsent.isEmpty()) {
+                finishMergedBatch(batch, context);
+                return null;
+            }
+            return Mono.fromFuture(() -> sendMergedBatchAsync(batch), true)
+                    .then(defer(() -> {
+                        finishMergedBatch(batch, context);
+                        return null;
+                    }));
         }
 
-        private void executeIf(IfStatement stmt, ExecutionContext context) throws Exception {
-            boolean condition = evaluateCondition(stmt.getConditionVariable(), context);
-            if (condition) {
-                for (Statement blockStmt : stmt.getTrueBlock().getStatements()) {
-                    executeStatement(blockStmt, context);
+        // 合并失败时本批的查询互不依赖，逐条并发发送
+        private CompletableFuture<Void> sendMergedBatchAsync(MergedBatch batch) {
+            List<Integer> unsent = batch.unsent;
+            CompletableFuture<JsonNode[]> merged = unsent.size() > 1
+                    ? sendMergedAsync(batch.parts) : CompletableFuture.completedFuture(null);
+            return merged.thenCompose(responses -> {
+                CompletableFuture<?>[] sends = new CompletableFuture<?>[unsent.size()];
+                for (int u = 0; u < unsent.size(); u++) {
+                    int i = unsent.get(u);
+                    if (responses != null) {
+                        batch.responses.set(i, responses[u]);
+                        sends[u] = CompletableFuture.completedFuture(null);
+                    } else {
+                        sends[u] = sendAsync(batch.templates.get(i), batch.requests.get(i))
+                                .thenAccept(response -> batch.responses.set(i, response));
+                    }
                 }
+                return CompletableFuture.allOf(sends);
+            });
+        }
+
+        private void executeIntCal(Instruction insn, ExecutionContext context) throws Exception {
+            int source = insn.getSource();
+            if (!context.isInt(source)) {
+                throw new Exception("Variable " + context.getLayout().nameOf(source) + " is not an integer.");
             }
+            context.setInt(insn.getTarget(), context.getInt(source) + insn.getIntValue());
         }
 
-        private void executeWhile(WhileStatement stmt, ExecutionContext context) throws Exception {
-            int maxIterations = 1000;
+        private void executeIf(Instruction insn, ExecutionContext context) throws Exception {
+            if (context.evaluateCondition(insn.getSource())) {
+                executeBlock(insn.getBody(), context);
+            }
+        }
+
+        private void executeWhile(Instruction insn, ExecutionContext context) throws Exception {
             int iteration = 0;
 
-            while (evaluateCondition(stmt.getConditionVariable(), context)) {
+            while (context.evaluateCondition(insn.getSource())) {
                 iteration++;
-                if (iteration > maxIterations) {
+                if (iteration > Instruction.MAX_LOOP_ITERATIONS) {
                     throw new Exception("While loop exceeded max iterations");
                 }
 
-                for (Statement blockStmt : stmt.getLoopBlock().getStatements()) {
-                    executeStatement(blockStmt, context);
+                executeBlock(insn.getBody(), context);
+            }
+        }
+    }
+
+    // 一批合并发送的查询；responses 中命中缓存的已经填好，unsent 为需要发送的下标，parts 与 unsent 一一对应
+    private static final class MergedBatch {
+        final long startTime = System.currentTimeMillis();
+        final List<Instruction> statements = new ArrayList<>();
+        final List<GqlTemplate> templates = new ArrayList<>();
+        final List<GqlRequest> requests = new ArrayList<>();
+        final List<String> cacheKeys = new ArrayList<>();
+        final List<JsonNode> responses = new ArrayList<>();
+        final List<Integer> unsent = new ArrayList<>();
+        final List<GqlQueryMerger.Part> parts = new ArrayList<>();
+        int next;
+    }
+
+    // 响应式执行中的一步，同步完成时返回 null
+    private interface AsyncStep {
+        Mono<Void> run() throws Exception;
+    }
+
+    private static Mono<Void> defer(AsyncStep step) {
+        return Mono.defer(() -> {
+            try {
+                Mono<Void> pending = step.run();
+                return pending != null ? pending : Mono.empty();
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
+    // 批量执行：每行有自己的执行帧和 ScriptExecutor，整批固定同一代插件；出错的行不再执行后续语句
+    private class BatchExecutor {
+        private final Program program;
+        private final ExecutionContext[] contexts;
+        private final ScriptExecutor[] executors;
+        private final Exception[] errors;
+
+        BatchExecutor(Program program, List<Map<String, String>> initParams) {
+            this.program = program;
+            int rows = initParams.size();
+            contexts = new ExecutionContext[rows];
+            executors = new ScriptExecutor[rows];
+            errors = new Exception[rows];
+            for (int row = 0; row < rows; row++) {
+                contexts[row] = newContext(program, initParams.get(row));
+                executors[row] = new ScriptExecutor();
+            }
+        }
+
+        ArrayNode execute() {
+            PluginGeneration generation = pluginService.acquire();
+            try {
+                for (ScriptExecutor executor : executors) {
+                    executor.pluginGeneration.set(generation);
+                }
+                for (Instruction insn : program.getInstructions()) {
+                    switch (insn.getKind()) {
+                        case GQL_QUERY -> executeGqlColumn(insn);
+                        case PLUGIN_CALL -> executePluginColumn(insn);
+                        default -> {
+                            for (int row : liveRows()) {
+                                try {
+                                    executors[row].executeInstruction(insn, contexts[row]);
+                                } catch (Exception e) {
+                                    errors[row] = e;
+                                }
+                            }
+                        }
+                    }
+                }
+            } finally {
+                generation.release();
+            }
+
+            ArrayNode results = objectMapper.createArrayNode();
+            for (int row = 0; row < contexts.length; row++) {
+                ObjectNode result = results.addObject();
+                if (errors[row] == null) {
+                    try {
+                        result.set("result", executors[row].output(contexts[row]));
+                        continue;
+                    } catch (Exception e) {
+                        errors[row] = e;
+                    }
+                }
+                result.put("error", String.valueOf(errors[row].getMessage()));
+            }
+            return results;
+        }
+
+        private List<Integer> liveRows() {
+            List<Integer> rows = new ArrayList<>();
+            for (int row = 0; row < contexts.length; row++) {
+                if (errors[row] == null) {
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+
+        // 先查结果缓存，只读查询在各行之间去重，再按别名分块合并发送；合并失败的块逐条发送
+        private void executeGqlColumn(Instruction insn) {
+            List<Integer> rows = liveRows();
+            GqlTemplate template = scriptService.getGqlpkQuery(insn.getQueryKey());
+            if (template == null) {
+                fail(rows, new Exception("GraphQL Key " + insn.getQueryKey() + " not found."));
+                return;
+            }
+            String[] cacheKeys = new String[contexts.length];
+            Map<GqlRequest, List<Integer>> readOnly = new LinkedHashMap<>();
+            List<GqlRequest> requests = new ArrayList<>();
+            List<List<Integer>> requestRows = new ArrayList<>();
+            for (int row : rows) {
+                try {
+                    GqlRequest request = bind(template, contexts[row]);
+                    cacheKeys[row] = cacheKey(template, contexts[row]);
+                    JsonNode cached = cacheKeys[row] == null ? null : gqlResultCache.get(cacheKeys[row]);
+                    if (cached != null) {
+                        executors[row].storeResponse(insn, cached, contexts[row]);
+                    } else if (template.isReadOnly()) {
+                        readOnly.computeIfAbsent(request, r -> new ArrayList<>()).add(row);
+                    } else {
+                        requests.add(request);
+                        requestRows.add(List.of(row));
+                    }
+                } catch (Exception e) {
+                    errors[row] = e;
+                }
+            }
+            for (Map.Entry<GqlRequest, List<Integer>> entry : readOnly.entrySet()) {
+                requests.add(entry.getKey());
+                requestRows.add(entry.getValue());
+            }
+
+            for (int start = 0; start < requests.size(); start += batchGqlChunkSize) {
+                int end = Math.min(start + batchGqlChunkSize, requests.size());
+                JsonNode[] merged = null;
+                if (gqlMergeEnabled && end - start > 1) {
+                    List<GqlQueryMerger.Part> parts = new ArrayList<>(end - start);
+                    for (int i = start; i < end; i++) {
+                        parts.add(GqlQueryMerger.parse(requests.get(i)));
+                    }
+                    merged = sendMerged(parts);
+                }
+                for (int i = start; i < end; i++) {
+                    try {
+                        JsonNode response = merged != null ? merged[i - start]
+                                : sendGraphQLQuery(requests.get(i), template.isReadOnly());
+                        // 去重的各行是不同的执行，第一行之外各自拿一份复制的响应；相同的请求只缓存一次
+                        List<Integer> shared = requestRows.get(i);
+                        cacheResponse(template, cacheKeys[shared.get(0)], response);
+                        for (int j = 0; j < shared.size(); j++) {
+                            int row = shared.get(j);
+                            executors[row].storeResponse(insn, j == 0 ? response : response.deepCopy(), contexts[row]);
+                        }
+                    } catch (Exception e) {
+                        fail(requestRows.get(i), e);
+                    }
                 }
             }
         }
 
-        private boolean evaluateCondition(String variableName, ExecutionContext context) throws Exception {
-            Object conditionValue = context.getVariable(variableName);
-            if (conditionValue == null) {
-                throw new Exception("Condition variable " + variableName + " not found.");
+        // 实现了批量调用的插件对所有行调用一次。批量调用失败时所有行都失败，不逐行重试，以免超时成倍增加、非幂等的插件重复执行
+        private void executePluginColumn(Instruction insn) {
+            PluginCallStatement stmt = (PluginCallStatement) insn.getStatement();
+            int[] slots = insn.getArguments();
+            List<Integer> rows = new ArrayList<>();
+            for (int row : liveRows()) {
+                String missing = null;
+                for (int i = 0; i < slots.length && missing == null; i++) {
+                    if (contexts[row].get(slots[i]) == null) {
+                        missing = stmt.getArguments().get(i);
+                    }
+                }
+                if (missing != null) {
+                    errors[row] = new Exception("Variable not found for parameter: " + missing);
+                } else {
+                    rows.add(row);
+                }
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+            PluginFunction function;
+            try {
+                function = executors[rows.get(0)].pinPluginGeneration()
+                        .find(stmt.getQualifiedName(), stmt.getFunctionName());
+            } catch (Exception e) {
+                fail(rows, e);
+                return;
             }
 
-            if (conditionValue instanceof JsonNode) {
-                JsonNode jsonNode = (JsonNode) conditionValue;
-                if (jsonNode.isBoolean()) {
-                    return jsonNode.asBoolean();
+            if (function.isBatched() && rows.size() > 1) {
+                List<ContextArguments> batch = new ArrayList<>(rows.size());
+                for (int row : rows) {
+                    batch.add(function.arguments(stmt.getArguments(), slots, contexts[row]));
                 }
-            } else if (conditionValue instanceof Integer) {
-                Integer intValue = (Integer) conditionValue;
-                if (intValue < 0) {
-                    throw new Exception("Integer condition cannot be negative: " + intValue);
+                try {
+                    List<JsonNode> results = function.callBatch(stmt.getArguments(), batch);
+                    for (int i = 0; i < rows.size(); i++) {
+                        contexts[rows.get(i)].set(insn.getTarget(), results.get(i));
+                    }
+                } catch (Exception e) {
+                    fail(rows, e);
+                }
+                return;
+            }
+            for (int row : rows) {
+                try {
+                    contexts[row].set(insn.getTarget(), function.call(stmt.getArguments(), slots, contexts[row]));
+                } catch (Exception e) {
+                    errors[row] = e;
                 }
-                return intValue > 0;
             }
+        }
+
+        private void fail(List<Integer> rows, Exception e) {
+            for (int row : rows) {
+                errors[row] = e;
+            }
+        }
+    }
+
+    private JsonNode send(GqlTemplate template, GqlRequest request) throws Exception {
+        if (isBatched(template)) {
+            return gqlBatcher.execute(template.getKey(), request,
+                    TimeUnit.MILLISECONDS.toNanos(gqlBatchWindowMillis), gqlBatchMaxSize);
+        }
+        return sendGraphQLQuery(request, template.isReadOnly());
+    }
+
+    // 开启跨请求批量的键由批处理器在发起者的线程上等待时间窗口，放到阻塞调用的调度器上
+    private CompletableFuture<JsonNode> sendAsync(GqlTemplate template, GqlRequest request) {
+        if (isBatched(template)) {
+            return Mono.fromCallable(() -> send(template, request)).subscribeOn(blockingScheduler).toFuture();
+        }
+        return sendGraphQLQueryAsync(request, template.isReadOnly());
+    }
+
+    // 预编译的模板只需按变量名取出绑定值，查询文本不变；未能预编译的模板把值拼接进文本
+    private GqlRequest bind(GqlTemplate template, ExecutionContext context) throws Exception {
+        GqlTemplate.Document document = template.getDocument();
+        if (document == null) {
+            return new GqlRequest(replaceVariables(template.getText(), context));
+        }
+        ObjectNode variables = objectMapper.createObjectNode();
+        for (Map.Entry<String, String> entry : document.variables().entrySet()) {
+            Object value = context.getVariable(entry.getKey());
+            // 与插件参数相同，缺少的变量是脚本错误，不能作为 null 发送
+            if (value == null) {
+                throw new Exception("Variable not found: " + entry.getKey());
+            }
+            variables.set(entry.getValue(), value instanceof JsonNode node ? node : objectMapper.valueToTree(value));
+        }
+        return new GqlRequest(document.query(), variables, document.hash());
+    }
+
+    // 结果缓存的键：gqlpk 键加模板占位符绑定值的规范化哈希；不可缓存时返回 null
+    private String cacheKey(GqlTemplate template, ExecutionContext context) throws JsonProcessingException {
+        if (!template.isCacheable() || !gqlResultCache.isEnabled()) {
+            return null;
+        }
+        List<String> names = new ArrayList<>(template.getPlaceholders());
+        Collections.sort(names);
+        StringBuilder bindings = new StringBuilder();
+        for (String name : names) {
+            Object value = context.getVariable(name);
+            bindings.append(name).append('=');
+            if (value instanceof JsonNode node) {
+                bindings.append(JsonNodeUtil.canonicalString(node));
+            } else {
+                bindings.append(objectMapper.writeValueAsString(value));
+            }
+            bindings.append('\n');
+        }
+        return template.getKey() + "#" + HashUtil.sha256(bindings.toString());
+    }
+
+    // 只缓存没有错误的响应
+    private void cacheResponse(GqlTemplate template, String cacheKey, JsonNode response) {
+        if (cacheKey == null || response.hasNonNull("errors") || !response.hasNonNull("data")) {
+            return;
+        }
+        gqlResultCache.put(template.getKey(), cacheKey, response, JsonNodeUtil.estimateSize(response),
+                TimeUnit.SECONDS.toNanos(template.getCacheTtlSeconds()));
+    }
+
+    private boolean isBatched(GqlTemplate template) {
+        return gqlBatchEnabled && template.isBatched();
+    }
+
+    /**
+     * 把多条查询按别名合并为一个请求，返回与 parts 一一对应的单条响应（data 和归属于该条的 errors）。
+     * 有查询无法合并、请求失败或存在无法归属的错误时返回 null，由调用方逐条发送。
+     */
+    private JsonNode[] sendMerged(List<GqlQueryMerger.Part> parts) {
+        GqlQueryMerger.Merged merged = merge(parts);
+        if (merged == null) {
+            return null;
+        }
+        try {
+            return splitMerged(merged, parts, sendGraphQLQuery(mergedRequest(merged), true));
+        } catch (IOException e) {
+            return mergeFailed(e);
+        }
+    }
 
-            throw new Exception("Invalid condition type for variable: " + variableName);
+    // 与 sendMerged 相同，但不占用调用线程；回退时 future 的结果为 null
+    private CompletableFuture<JsonNode[]> sendMergedAsync(List<GqlQueryMerger.Part> parts) {
+        GqlQueryMerger.Merged merged = merge(parts);
+        if (merged == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return sendGraphQLQueryAsync(mergedRequest(merged), true)
+                .handle((response, e) -> e == null ? splitMerged(merged, parts, response) : mergeFailed(e));
+    }
+
+    private static GqlQueryMerger.Merged merge(List<GqlQueryMerger.Part> parts) {
+        return parts.contains(null) ? null : GqlQueryMerger.merge(parts);
+    }
+
+    // 只有 query 操作会被合并
+    private GqlRequest mergedRequest(GqlQueryMerger.Merged merged) {
+        String hash = merged.isFixedText() && usePersistedQueries() && isWorthPersisting(merged.getDocument())
+                ? HashUtil.sha256(merged.getDocument()) : null;
+        return new GqlRequest(merged.getDocument(), merged.getVariables(), hash);
+    }
+
+    private JsonNode[] splitMerged(GqlQueryMerger.Merged merged, List<GqlQueryMerger.Part> parts, JsonNode response) {
+        List<List<JsonNode>> errors = merged.splitErrors(response);
+        JsonNode[] data = errors.get(parts.size()).isEmpty() ? merged.splitData(response) : null;
+        if (data == null) {
+            mergeFallbacks.increment();
+            return null;
+        }
+        mergedRequests.increment();
+        mergedStatements.add(parts.size());
+        JsonNode[] responses = new JsonNode[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            ObjectNode single = objectMapper.createObjectNode();
+            single.set("data", data[i]);
+            if (!errors.get(i).isEmpty()) {
+                single.putArray("errors").addAll(errors.get(i));
+            }
+            responses[i] = single;
+        }
+        return responses;
+    }
 
-        private String extractQueryKey(String queryBody) {
-            // 从 {getTripByTripId} 中提取 getTripByTripId
-            String trimmed = queryBody.trim();
-            if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
-                return trimmed.substring(1, trimmed.length() - 1).trim();
+    private JsonNode[] mergeFailed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        System.err.println("Merged GraphQL request failed, sending queries individually: " + cause.getMessage());
+        mergeFallbacks.increment();
+        return null;
+    }
+
+    // 跨请求批量：同一gqlpk键的相同请求只发送一次，不同请求按别名合并，无法合并时逐条发送。
+    // 只有只读查询参与批量（见 GqlTemplate.isBatched），mutation 不会在这里去重
+    private List<JsonNode> sendBatch(String queryKey, List<GqlRequest> requests) throws Exception {
+        List<GqlRequest> distinct = new ArrayList<>(new LinkedHashSet<>(requests));
+        Map<GqlRequest, JsonNode> responses = new HashMap<>();
+        JsonNode[] merged = null;
+        if (distinct.size() > 1) {
+            List<GqlQueryMerger.Part> parts = new ArrayList<>(distinct.size());
+            for (GqlRequest request : distinct) {
+                parts.add(GqlQueryMerger.parse(request));
             }
-            return trimmed;
+            merged = sendMerged(parts);
+        }
+        GqlTemplate template = scriptService.getGqlpkQuery(queryKey);
+        boolean readOnly = template != null && template.isReadOnly();
+        for (int i = 0; i < distinct.size(); i++) {
+            responses.put(distinct.get(i), merged != null ? merged[i] : sendGraphQLQuery(distinct.get(i), readOnly));
         }
+        // 相同请求的调用方属于不同的执行，第一个之外各自拿一份复制的响应
+        List<JsonNode> result = new ArrayList<>(requests.size());
+        Set<GqlRequest> delivered = new HashSet<>();
+        for (GqlRequest request : requests) {
+            JsonNode response = responses.get(request);
+            result.add(delivered.add(request) ? response : response.deepCopy());
+        }
+        return result;
     }
 
     private String replaceVariables(String template, ExecutionContext context) {
-        Matcher matcher = VARIABLE_PATTERN.matcher(template);
+        Matcher matcher = GqlTemplate.VARIABLE_PATTERN.matcher(template);
         StringBuffer result = new StringBuffer();
 
         while (matcher.find()) {
@@ -332,34 +1299,159 @@ public class ExecutionService {
         return input.replace("\"", "\\\"");
     }
 
-    private JsonNode sendGraphQLQuery(String gqlRequest) throws IOException {
+    // 只读查询经过 gqlCoalescer，同一时刻相同的请求只发送一次
+    private JsonNode sendGraphQLQuery(GqlRequest gqlRequest, boolean readOnly) throws IOException {
+        boolean persisted = isPersisted(gqlRequest);
+        ObjectNode queryObject = queryObject(gqlRequest, persisted);
+
+        if (!readOnly || !gqlCoalesceEnabled) {
+            return persisted ? postPersistedQuery(gqlRequest, queryObject) : postGraphQLRequest(queryObject);
+        }
+        try {
+            // 请求体由 GqlRequest 唯一确定，直接以它为键，不需要先序列化
+            return gqlCoalescer.execute(gqlRequest, () -> persisted
+                    ? postPersistedQuery(gqlRequest, queryObject) : postGraphQLRequest(queryObject));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("An error occurred while sending the GraphQL query", e);
+        }
+    }
+
+    // 与 sendGraphQLQuery 相同，但不占用调用线程，和同步的调用方共用 gqlCoalescer
+    private CompletableFuture<JsonNode> sendGraphQLQueryAsync(GqlRequest gqlRequest, boolean readOnly) {
+        boolean persisted = isPersisted(gqlRequest);
+        ObjectNode queryObject = queryObject(gqlRequest, persisted);
+
+        if (!readOnly || !gqlCoalesceEnabled) {
+            return persisted ? postPersistedQueryAsync(gqlRequest, queryObject) : postGraphQLRequestAsync(queryObject);
+        }
+        return gqlCoalescer.executeAsync(gqlRequest, () -> persisted
+                ? postPersistedQueryAsync(gqlRequest, queryObject) : postGraphQLRequestAsync(queryObject));
+    }
+
+    private boolean isPersisted(GqlRequest gqlRequest) {
+        return gqlRequest.queryHash() != null && usePersistedQueries() && isWorthPersisting(gqlRequest.query());
+    }
+
+    private ObjectNode queryObject(GqlRequest gqlRequest, boolean persisted) {
         ObjectNode queryObject = objectMapper.createObjectNode();
-        queryObject.put("query", gqlRequest);
+        if (!persisted) {
+            queryObject.put("query", gqlRequest.query());
+        }
+        if (gqlRequest.variables() != null && !gqlRequest.variables().isEmpty()) {
+            queryObject.set("variables", gqlRequest.variables());
+        }
+        if (persisted) {
+            putPersistedQuery(queryObject, gqlRequest.queryHash());
+        }
+        return queryObject;
+    }
 
-        String requestBody = objectMapper.writeValueAsString(queryObject);
+    // 先只发送哈希，网关没有保存该查询时带上全文重发，网关同时完成注册
+    private JsonNode postPersistedQuery(GqlRequest gqlRequest, ObjectNode queryObject) throws IOException {
+        JsonNode response = postGraphQLRequest(queryObject);
+        return isPersistedQueryHit(gqlRequest, queryObject, response) ? response : postGraphQLRequest(queryObject);
+    }
+
+    private CompletableFuture<JsonNode> postPersistedQueryAsync(GqlRequest gqlRequest, ObjectNode queryObject) {
+        return postGraphQLRequestAsync(queryObject).thenCompose(response ->
+                isPersistedQueryHit(gqlRequest, queryObject, response)
+                        ? CompletableFuture.completedFuture(response) : postGraphQLRequestAsync(queryObject));
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    // 未命中时把全文放回请求体，网关不支持APQ时同时去掉哈希
+    private boolean isPersistedQueryHit(GqlRequest gqlRequest, ObjectNode queryObject, JsonNode response) {
+        boolean notSupported = isPersistedQueryError(response, "PERSISTED_QUERY_NOT_SUPPORTED", "PersistedQueryNotSupported");
+        if (!notSupported && !isPersistedQueryError(response, "PERSISTED_QUERY_NOT_FOUND", "PersistedQueryNotFound")) {
+            apqHits.increment();
+            // 查询文本基本是ASCII，按字符数估算
+            apqBytesSaved.add(gqlRequest.query().length() - PERSISTED_QUERY_OVERHEAD);
+            return true;
+        }
+        if (notSupported) {
+            disableApq();
+            queryObject.remove("extensions");
+        } else {
+            apqMisses.increment();
+        }
+        queryObject.put("query", gqlRequest.query());
+        return false;
+    }
 
-        HttpEntity<String> requestEntity = new HttpEntity<>(requestBody, headers);
+    private boolean usePersistedQueries() {
+        return gqlApqEnabled && apqSupported;
+    }
 
-        try {
-            ResponseEntity<String> responseEntity = restTemplate.postForEntity(
-                    GRAPHQL_ENDPOINT,
-                    requestEntity,
-                    String.class
-            );
+    private static boolean isWorthPersisting(String query) {
+        return query.length() > PERSISTED_QUERY_OVERHEAD;
+    }
+
+    private void disableApq() {
+        if (apqSupported) {
+            apqSupported = false;
+            System.err.println("GraphQL gateway does not support persisted queries, sending full query text");
+        }
+    }
+
+    private static void putPersistedQuery(ObjectNode queryObject, String hash) {
+        queryObject.putObject("extensions").putObject("persistedQuery")
+                .put("version", 1)
+                .put("sha256Hash", hash);
+    }
+
+    // APQ 协议的错误只在 errors 中，按 extensions.code 或 message 识别
+    private static boolean isPersistedQueryError(JsonNode response, String code, String message) {
+        JsonNode errors = response.get("errors");
+        if (errors == null || !errors.isArray()) {
+            return false;
+        }
+        for (JsonNode error : errors) {
+            if (code.equals(error.path("extensions").path("code").asText()) || message.equals(error.path("message").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            if (responseEntity.getStatusCode() != HttpStatus.OK) {
-                throw new IOException("GraphQL query failed with status code: " + responseEntity.getStatusCode());
+    private JsonNode postGraphQLRequest(ObjectNode body) throws IOException {
+        gqlRequests.increment();
+        try {
+            return gatewayClient.post(body);
+        } catch (GatewayClient.StatusException e) {
+            JsonNode response = persistedQueryErrorResponse(e);
+            if (response != null) {
+                return response;
             }
+            throw e;
+        }
+    }
 
-            return objectMapper.readTree(responseEntity.getBody());
+    private CompletableFuture<JsonNode> postGraphQLRequestAsync(ObjectNode body) {
+        gqlRequests.increment();
+        return gatewayClient.postAsync(body).exceptionallyCompose(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof GatewayClient.StatusException status) {
+                try {
+                    JsonNode response = persistedQueryErrorResponse(status);
+                    if (response != null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                } catch (IOException readError) {
+                    return CompletableFuture.failedFuture(readError);
+                }
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
 
-        } catch (HttpClientErrorException | HttpServerErrorException e) {
-            throw new IOException("GraphQL query failed with error: " + e.getStatusCode() + " " + e.getResponseBodyAsString(), e);
-        } catch (Exception e) {
-            throw new IOException("An error occurred while sending the GraphQL query", e);
+    // 部分网关对 PersistedQueryNotFound 返回4xx，响应体照常交给调用方识别；其他状态返回 null
+    private JsonNode persistedQueryErrorResponse(GatewayClient.StatusException e) throws IOException {
+        String responseBody = e.getResponseBody();
+        if (e.getStatusCode() >= 400 && e.getStatusCode() < 500
+                && (responseBody.contains("PersistedQueryNot") || responseBody.contains("PERSISTED_QUERY_NOT"))) {
+            return objectMapper.readTree(responseBody);
         }
+        return null;
     }
 }
@@ -0,0 +1,470 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 访问数据网关的HTTP客户端，基于 HttpClient 5 的异步客户端。
+ * http1 模式使用有上限的长连接池，http2 模式在每个网关地址的单个连接上多路复用。
+ * postAsync 不占用调用线程，post 在其上阻塞等待结果。请求体在连接可写时直接序列化到连接上，
+ * 响应体在 I/O 线程上边接收边解析，都不在内存中缓存完整的消息体。
+ * 配置多个网关副本时按 power-of-two-choices 选择：随机取两个可用副本，选响应时间和进行中请求数较小的一个。
+ * 连续失败的副本被摘除一段时间，主动健康检查失败的副本在检查恢复前不再使用。
+ */
+public class GatewayClient implements AutoCloseable {
+
+    /**
+     * @param httpVersion       http1 | http2，http2 对 http 地址按 prior knowledge 建立 h2c 连接
+     * @param maxConnections    http1 连接池中每个网关副本的连接数上限
+     * @param readTimeoutMillis 等待响应的超时，连接空闲超过该时间同样断开
+     * @param totalTimeoutMillis 从提交到收到完整响应的超时，包括等待连接的时间
+     * @param poolTimeoutMillis 从连接池获取连接的超时
+     * @param keepAliveMillis   空闲连接保留的时间
+     * @param failureThreshold  连续失败该次数后摘除副本
+     * @param ejectMillis       摘除的时长，到期后重新参与选择
+     * @param healthCheckIntervalMillis 主动健康检查的间隔，0 表示不检查
+     * @param healthCheckTimeoutMillis  单次健康检查的超时，远小于 totalTimeoutMillis，挂起的副本不会拖慢检查
+     */
+    public record Settings(List<String> endpoints, String httpVersion, int maxConnections,
+                           long connectTimeoutMillis, long readTimeoutMillis, long totalTimeoutMillis,
+                           long poolTimeoutMillis, long keepAliveMillis,
+                           int failureThreshold, long ejectMillis, long healthCheckIntervalMillis,
+                           long healthCheckTimeoutMillis) {
+
+        public static Settings defaults(String... endpoints) {
+            return new Settings(List.of(endpoints), "http1", 64, 2000, 10000, 30000, 2000, 60000, 3, 10000, 0, 1000);
+        }
+
+        public Settings withMaxConnections(int maxConnections) {
+            return new Settings(endpoints, httpVersion, maxConnections, connectTimeoutMillis, readTimeoutMillis,
+                    totalTimeoutMillis, poolTimeoutMillis, keepAliveMillis,
+                    failureThreshold, ejectMillis, healthCheckIntervalMillis, healthCheckTimeoutMillis);
+        }
+
+        public Settings withHealthCheckInterval(long healthCheckIntervalMillis) {
+            return new Settings(endpoints, httpVersion, maxConnections, connectTimeoutMillis, readTimeoutMillis,
+                    totalTimeoutMillis, poolTimeoutMillis, keepAliveMillis,
+                    failureThreshold, ejectMillis, healthCheckIntervalMillis, healthCheckTimeoutMillis);
+        }
+    }
+
+    private static final String HEALTH_CHECK_QUERY = "{ __typename }";
+
+    /**
+     * 网关返回非200状态码。
+     */
+    public static class StatusException extends IOException {
+        private final int statusCode;
+        private final String responseBody;
+
+        public StatusException(int statusCode, String responseBody) {
+            super("GraphQL query failed with error: " + statusCode + " " + responseBody);
+            this.statusCode = statusCode;
+            this.responseBody = responseBody;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getResponseBody() {
+            return responseBody;
+        }
+    }
+
+    private final Settings settings;
+    private volatile List<GatewayEndpoint> endpoints;
+    private final boolean http2;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // http2 模式没有连接池，为 null
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient client;
+    private final ScheduledExecutorService healthChecker;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    // 健康检查单独统计，不计入上面的请求、失败和超时
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder probeFailures = new LongAdder();
+    private final LongAdder probeTimeouts = new LongAdder();
+
+    public GatewayClient(Settings settings) {
+        this.settings = settings;
+        this.endpoints = createEndpoints(settings.endpoints(), List.of());
+        this.http2 = "http2".equalsIgnoreCase(settings.httpVersion());
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setSoTimeout(Timeout.ofMilliseconds(settings.readTimeoutMillis()))
+                .build();
+        RequestConfig.Builder requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(settings.poolTimeoutMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(settings.readTimeoutMillis()))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(settings.keepAliveMillis()));
+        IOSessionListener connectionListener = new ConnectionListener();
+
+        if (http2) {
+            connectionManager = null;
+            client = HttpAsyncClients.customHttp2()
+                    .setIOReactorConfig(ioReactorConfig)
+                    // h2 客户端不经过连接池，连接超时只能在请求配置中设置
+                    .setDefaultRequestConfig(requestConfig
+                            .setConnectTimeout(Timeout.ofMilliseconds(settings.connectTimeoutMillis()))
+                            .build())
+                    .setIOSessionListener(connectionListener)
+                    .build();
+        } else {
+            connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(settings.maxConnections() * endpoints.size())
+                    .setMaxConnPerRoute(settings.maxConnections())
+                    .setDefaultConnectionConfig(ConnectionConfig.custom()
+                            .setConnectTimeout(Timeout.ofMilliseconds(settings.connectTimeoutMillis()))
+                            .setSocketTimeout(Timeout.ofMilliseconds(settings.readTimeoutMillis()))
+                            .build())
+                    .setDefaultTlsConfig(TlsConfig.custom()
+                            .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                            .build())
+                    .build();
+            client = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setIOReactorConfig(ioReactorConfig)
+                    .setDefaultRequestConfig(requestConfig.build())
+                    .setIOSessionListener(connectionListener)
+                    .evictIdleConnections(TimeValue.ofMilliseconds(settings.keepAliveMillis()))
+                    .build();
+        }
+        client.start();
+
+        if (settings.healthCheckIntervalMillis() > 0) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gateway-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, settings.healthCheckIntervalMillis(),
+                    settings.healthCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            healthChecker = null;
+        }
+    }
+
+    /**
+     * 替换网关副本列表，地址不变的副本保留统计和健康状态。
+     */
+    public void updateEndpoints(List<String> uris) {
+        List<GatewayEndpoint> updated = createEndpoints(uris, endpoints);
+        if (connectionManager != null) {
+            connectionManager.setMaxTotal(settings.maxConnections() * updated.size());
+        }
+        endpoints = updated;
+        System.out.println("GraphQL gateway endpoints: " + uris);
+    }
+
+    private static List<GatewayEndpoint> createEndpoints(List<String> uris, List<GatewayEndpoint> current) {
+        if (uris == null || uris.isEmpty()) {
+            throw new IllegalArgumentException("At least one GraphQL gateway endpoint is required");
+        }
+        Map<URI, GatewayEndpoint> existing = new LinkedHashMap<>();
+        for (GatewayEndpoint endpoint : current) {
+            existing.put(endpoint.getUri(), endpoint);
+        }
+        Map<URI, GatewayEndpoint> created = new LinkedHashMap<>();
+        for (String uri : uris) {
+            URI parsed = URI.create(uri.trim());
+            if (parsed.getScheme() == null || parsed.getHost() == null) {
+                throw new IllegalArgumentException("Invalid GraphQL gateway endpoint: " + uri);
+            }
+            created.computeIfAbsent(parsed, key -> existing.getOrDefault(key, new GatewayEndpoint(key)));
+        }
+        return List.copyOf(created.values());
+    }
+
+    public List<String> getEndpoints() {
+        List<String> uris = new ArrayList<>();
+        for (GatewayEndpoint endpoint : endpoints) {
+            uris.add(endpoint.getUri().toString());
+        }
+        return uris;
+    }
+
+    // power-of-two-choices；没有可用副本时仍在全部副本中选择，由请求本身的结果决定是否恢复
+    private GatewayEndpoint choose() {
+        List<GatewayEndpoint> all = endpoints;
+        if (all.size() == 1) {
+            return all.get(0);
+        }
+        long now = System.nanoTime();
+        List<GatewayEndpoint> candidates = new ArrayList<>(all.size());
+        for (GatewayEndpoint endpoint : all) {
+            if (endpoint.isAvailable(now)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = all;
+        }
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        GatewayEndpoint a = candidates.get(first);
+        GatewayEndpoint b = candidates.get(second);
+        return a.score() <= b.score() ? a : b;
+    }
+
+    public CompletableFuture<JsonNode> postAsync(ObjectNode body) {
+        requests.increment();
+        GatewayEndpoint endpoint = choose();
+        endpoint.onStart();
+        long started = System.nanoTime();
+        CompletableFuture<JsonNode> result = send(endpoint, body, requestBytes, settings.totalTimeoutMillis());
+        result.whenComplete((response, e) -> {
+            count(e, failures, timeouts);
+            // 4xx 是请求本身的问题，不算副本故障
+            if (e == null || e instanceof StatusException status && status.getStatusCode() < 500) {
+                endpoint.onSuccess(System.nanoTime() - started);
+            } else {
+                endpoint.onFailure(settings.failureThreshold(), TimeUnit.MILLISECONDS.toNanos(settings.ejectMillis()));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 只发送请求，失败和超时由调用方按用途统计。
+     *
+     * @param bytesWritten 统计写出的请求字节数，为 null 时不统计
+     */
+    private CompletableFuture<JsonNode> send(GatewayEndpoint endpoint, JsonNode body, LongAdder bytesWritten,
+                                             long timeoutMillis) {
+        long submitted = System.nanoTime();
+        // 请求体开始写出时连接已经就绪，据此统计等待连接（以及新建连接）的时间
+        JsonEntityProducer entity = new JsonEntityProducer(objectMapper, body,
+                () -> recordWait(System.nanoTime() - submitted), bytesWritten);
+
+        CompletableFuture<JsonNode> result = new CompletableFuture<>();
+        Future<GqlResponseConsumer> exchange = client.execute(
+                new BasicRequestProducer(new BasicHttpRequest(Method.POST, endpoint.getUri()), entity),
+                new GqlResponseConsumer(objectMapper, responseBytes),
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(GqlResponseConsumer response) {
+                        try {
+                            result.complete(response.getResponse());
+                        } catch (IOException e) {
+                            result.completeExceptionally(e);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        result.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+        result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((response, e) -> {
+            if (e instanceof TimeoutException) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // 取消的请求不算失败
+    private static void count(Throwable e, LongAdder failures, LongAdder timeouts) {
+        if (e instanceof TimeoutException) {
+            timeouts.increment();
+        } else if (e != null && !(e instanceof CancellationException)) {
+            failures.increment();
+        }
+    }
+
+    public JsonNode post(ObjectNode body) throws IOException {
+        try {
+            return postAsync(body).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the GraphQL gateway", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                throw new IOException("GraphQL query timed out after " + settings.totalTimeoutMillis() + "ms", e.getCause());
+            }
+            throw new IOException("An error occurred while sending the GraphQL query", e.getCause());
+        }
+    }
+
+    // 同时向每个副本发送最简单的查询，在 healthCheckTimeoutMillis 内返回 200 即视为健康。
+    // 等全部检查结束后才安排下一轮，检查不会重叠
+    private void checkHealth() {
+        ObjectNode query = objectMapper.createObjectNode().put("query", HEALTH_CHECK_QUERY);
+        List<GatewayEndpoint> all = endpoints;
+        CompletableFuture<?>[] checks = new CompletableFuture<?>[all.size()];
+        for (int i = 0; i < checks.length; i++) {
+            GatewayEndpoint endpoint = all.get(i);
+            probes.increment();
+            checks[i] = send(endpoint, query, null, settings.healthCheckTimeoutMillis()).handle((response, e) -> {
+                count(e, probeFailures, probeTimeouts);
+                endpoint.onHealthCheck(e == null);
+                return null;
+            });
+        }
+        try {
+            CompletableFuture.allOf(checks).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // handle 之后不会失败
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waits.increment();
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("httpVersion", http2 ? "http2" : "http1");
+        stats.put("requests", requests.sum());
+        stats.put("failures", failures.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("requestBytes", requestBytes.sum());
+        stats.put("responseBytes", responseBytes.sum());
+
+        Map<String, Object> healthCheck = new LinkedHashMap<>();
+        healthCheck.put("probes", probes.sum());
+        healthCheck.put("failures", probeFailures.sum());
+        healthCheck.put("timeouts", probeTimeouts.sum());
+        stats.put("healthCheck", healthCheck);
+
+        Map<String, Object> pool = new LinkedHashMap<>();
+        if (connectionManager != null) {
+            PoolStats total = connectionManager.getTotalStats();
+            pool.put("max", total.getMax());
+            pool.put("leased", total.getLeased());
+            pool.put("available", total.getAvailable());
+            pool.put("pending", total.getPending());
+            pool.put("utilization", total.getMax() == 0 ? 0.0 : (double) total.getLeased() / total.getMax());
+        }
+        long waitCount = waits.sum();
+        pool.put("avgWaitMillis", waitCount == 0 ? 0.0 : waitNanos.sum() / 1_000_000.0 / waitCount);
+        pool.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        stats.put("pool", pool);
+
+        // 新建和关闭的连接数持续增长说明长连接没有被复用
+        Map<String, Object> connections = new LinkedHashMap<>();
+        long opened = connectionsOpened.sum();
+        long closed = connectionsClosed.sum();
+        connections.put("opened", opened);
+        connections.put("closed", closed);
+        connections.put("open", opened - closed);
+        stats.put("connections", connections);
+
+        List<Map<String, Object>> endpointStats = new ArrayList<>();
+        for (GatewayEndpoint endpoint : endpoints) {
+            endpointStats.add(endpoint.getStats());
+        }
+        stats.put("endpoints", endpointStats);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        client.close(CloseMode.GRACEFUL);
+    }
+
+    private class ConnectionListener implements IOSessionListener {
+
+        @Override
+        public void connected(IOSession session) {
+            connectionsOpened.increment();
+        }
+
+        @Override
+        public void startTls(IOSession session) {
+        }
+
+        @Override
+        public void inputReady(IOSession session) {
+        }
+
+        @Override
+        public void outputReady(IOSession session) {
+        }
+
+        @Override
+        public void timeout(IOSession session) {
+        }
+
+        @Override
+        public void exception(IOSession session, Exception ex) {
+        }
+
+        @Override
+        public void disconnected(IOSession session) {
+            connectionsClosed.increment();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.scriptparser.service;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个网关副本的状态：进行中的请求数、响应时间的指数移动平均，以及被动和主动健康检查的结果。
+ */
+public class GatewayEndpoint {
+
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private final URI uri;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+    // 并发更新时个别样本丢失不影响选择，不加锁
+    private volatile double latencyNanos;
+    // 连续失败后摘除到该时刻（System.nanoTime），0 表示未摘除
+    private volatile long ejectedUntil;
+    private volatile boolean healthCheckPassed = true;
+
+    public GatewayEndpoint(URI uri) {
+        this.uri = uri;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    boolean isAvailable(long now) {
+        return healthCheckPassed && (ejectedUntil == 0 || now - ejectedUntil >= 0);
+    }
+
+    // 响应时间越短、进行中的请求越少越优先；没有样本的新副本响应时间按0计，会先被尝试
+    double score() {
+        return (latencyNanos + 1) * (inFlight.get() + 1);
+    }
+
+    void onStart() {
+        requests.increment();
+        inFlight.incrementAndGet();
+    }
+
+    void onSuccess(long nanos) {
+        inFlight.decrementAndGet();
+        double previous = latencyNanos;
+        latencyNanos = previous == 0 ? nanos : previous + EWMA_WEIGHT * (nanos - previous);
+        consecutiveFailures.set(0);
+    }
+
+    void onFailure(int failureThreshold, long ejectNanos) {
+        inFlight.decrementAndGet();
+        failures.increment();
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            consecutiveFailures.set(0);
+            ejectedUntil = System.nanoTime() + ejectNanos;
+            ejections.increment();
+            System.err.println("GraphQL gateway " + uri + " ejected after " + failureThreshold + " consecutive failures");
+        }
+    }
+
+    void onHealthCheck(boolean passed) {
+        if (passed && !healthCheckPassed) {
+            System.out.println("GraphQL gateway " + uri + " passed health check");
+        } else if (!passed && healthCheckPassed) {
+            System.err.println("GraphQL gateway " + uri + " failed health check");
+        }
+        healthCheckPassed = passed;
+        if (passed) {
+            ejectedUntil = 0;
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("uri", uri.toString());
+        stats.put("available", isAvailable(System.nanoTime()));
+        stats.put("healthCheckPassed", healthCheckPassed);
+        stats.put("inFlight", inFlight.get());
+        stats.put("latencyMillis", latencyNanos / 1_000_000.0);
+        stats.put("requests", requests.sum());
+        stats.put("failures", failures.sum());
+        stats.put("ejections", ejections.sum());
+        return stats;
+    }
+}
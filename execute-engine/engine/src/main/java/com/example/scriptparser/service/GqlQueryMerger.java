@@ -0,0 +1,545 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.GqlRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把多条互不依赖的GraphQL查询合并为一个文档：每条查询的顶层字段加上 s{序号}_ 前缀的别名，
+ * 响应中的 data 和 errors 再按别名拆回各条查询。变量同样加上前缀，变量定义和变量值合并到一起。
+ * 只合并不带操作指令的 query 操作（可附带不引用变量的片段定义），其余文档返回 null 由调用方单独发送。
+ */
+public class GqlQueryMerger {
+
+    private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+    public static final class Part {
+        private final String text;
+        private final List<Field> fields;
+        private final Map<String, String> fragments;
+        private final List<VariableDefinition> definitions;
+        // 选择集中变量引用 $ 的位置，按升序
+        private final List<Integer> variableRefs;
+        private ObjectNode variables;
+        private boolean fixedText;
+
+        private Part(String text, List<Field> fields, Map<String, String> fragments,
+                     List<VariableDefinition> definitions, List<Integer> variableRefs) {
+            this.text = text;
+            this.fields = fields;
+            this.fragments = fragments;
+            this.definitions = definitions;
+            this.variableRefs = variableRefs;
+        }
+    }
+
+    private record Field(int start, int nameStart, int end, String responseKey, boolean aliased) {
+    }
+
+    // type 为变量名之后的部分，包括类型、默认值和指令
+    private record VariableDefinition(String name, String type) {
+    }
+
+    public static final class Merged {
+        private final String document;
+        private final ObjectNode variables;
+        private final boolean fixedText;
+        private final int size;
+        // 合并后的别名 -> 所属查询序号、原始响应键
+        private final Map<String, Integer> owners;
+        private final Map<String, String> originalKeys;
+
+        private Merged(String document, ObjectNode variables, boolean fixedText, int size,
+                       Map<String, Integer> owners, Map<String, String> originalKeys) {
+            this.document = document;
+            this.variables = variables;
+            this.fixedText = fixedText;
+            this.size = size;
+            this.owners = owners;
+            this.originalKeys = originalKeys;
+        }
+
+        public String getDocument() {
+            return document;
+        }
+
+        // 合并后的变量值，没有变量时为 null
+        public ObjectNode getVariables() {
+            return variables;
+        }
+
+        // 各条查询的文本都固定时，合并后的文档只取决于查询的组合，会重复出现
+        public boolean isFixedText() {
+            return fixedText;
+        }
+
+        /**
+         * 按别名拆分 data，返回每条查询各自的 data 对象；data 整体为空时返回 null。
+         */
+        public JsonNode[] splitData(JsonNode response) {
+            JsonNode data = response == null ? null : response.get("data");
+            if (data == null || !data.isObject()) {
+                return null;
+            }
+            ObjectNode[] parts = new ObjectNode[size];
+            for (int i = 0; i < size; i++) {
+                parts[i] = factory.objectNode();
+            }
+            data.fields().forEachRemaining(entry -> {
+                Integer owner = owners.get(entry.getKey());
+                if (owner != null) {
+                    parts[owner].set(originalKeys.get(entry.getKey()), entry.getValue());
+                }
+            });
+            return parts;
+        }
+
+        /**
+         * 按 path 的首个元素把 errors 归属到各条查询，path 改写回原始响应键；
+         * 无法归属的错误（如整个文档校验失败）放在下标 size 处。
+         */
+        public List<List<JsonNode>> splitErrors(JsonNode response) {
+            List<List<JsonNode>> result = new ArrayList<>(size + 1);
+            for (int i = 0; i <= size; i++) {
+                result.add(new ArrayList<>());
+            }
+            JsonNode errors = response == null ? null : response.get("errors");
+            if (errors == null || !errors.isArray()) {
+                return result;
+            }
+            for (JsonNode error : errors) {
+                JsonNode path = error.get("path");
+                Integer owner = path != null && path.isArray() && path.size() > 0
+                        ? owners.get(path.get(0).asText()) : null;
+                if (owner == null) {
+                    result.get(size).add(error);
+                    continue;
+                }
+                ObjectNode copy = ((ObjectNode) error).deepCopy();
+                ArrayNode newPath = copy.putArray("path");
+                newPath.add(originalKeys.get(path.get(0).asText()));
+                for (int i = 1; i < path.size(); i++) {
+                    newPath.add(path.get(i));
+                }
+                result.get(owner).add(copy);
+            }
+            return result;
+        }
+    }
+
+    public static Part parse(GqlRequest request) {
+        Part part = new Scanner(request.query()).document();
+        if (part != null) {
+            part.variables = request.variables();
+            part.fixedText = request.queryHash() != null;
+        }
+        return part;
+    }
+
+    /**
+     * 合并多条已解析的查询；片段同名但定义不同时无法合并，返回 null。
+     */
+    public static Merged merge(List<Part> parts) {
+        StringBuilder selections = new StringBuilder();
+        List<String> definitions = new ArrayList<>();
+        ObjectNode variables = factory.objectNode();
+        Map<String, Integer> owners = new HashMap<>();
+        Map<String, String> originalKeys = new HashMap<>();
+        Map<String, String> fragments = new LinkedHashMap<>();
+        boolean fixedText = true;
+
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            fixedText &= part.fixedText;
+            String prefix = "s" + i + "_";
+            for (VariableDefinition definition : part.definitions) {
+                definitions.add("$" + prefix + definition.name() + ": " + definition.type());
+            }
+            if (part.variables != null) {
+                part.variables.fields().forEachRemaining(entry -> variables.set(prefix + entry.getKey(), entry.getValue()));
+            }
+            for (Field field : part.fields) {
+                selections.append("\n  ").append(prefix);
+                if (field.aliased()) {
+                    appendRenamed(selections, part, field.start(), field.end(), prefix);
+                } else {
+                    selections.append(field.responseKey()).append(": ");
+                    appendRenamed(selections, part, field.nameStart(), field.end(), prefix);
+                }
+                owners.put(prefix + field.responseKey(), i);
+                originalKeys.put(prefix + field.responseKey(), field.responseKey());
+            }
+            for (Map.Entry<String, String> fragment : part.fragments.entrySet()) {
+                String existing = fragments.putIfAbsent(fragment.getKey(), fragment.getValue());
+                if (existing != null && !existing.equals(fragment.getValue())) {
+                    return null;
+                }
+            }
+        }
+        StringBuilder document = new StringBuilder("query");
+        if (!definitions.isEmpty()) {
+            document.append('(').append(String.join(", ", definitions)).append(')');
+        }
+        document.append(" {").append(selections).append("\n}");
+        for (String fragment : fragments.values()) {
+            document.append('\n').append(fragment);
+        }
+        return new Merged(document.toString(), variables.isEmpty() ? null : variables, fixedText,
+                parts.size(), owners, originalKeys);
+    }
+
+    // 复制 [from, to) 范围内的文本，变量引用加上前缀
+    private static void appendRenamed(StringBuilder out, Part part, int from, int to, String prefix) {
+        int last = from;
+        for (int ref : part.variableRefs) {
+            if (ref >= from && ref < to) {
+                out.append(part.text, last, ref + 1).append(prefix);
+                last = ref + 1;
+            }
+        }
+        out.append(part.text, last, to);
+    }
+
+    private static final class Scanner {
+        private final String src;
+        private final int length;
+        private int pos;
+
+        Scanner(String src) {
+            this.src = src;
+            this.length = src.length();
+        }
+
+        Part document() {
+            List<Field> fields = null;
+            List<VariableDefinition> definitions = List.of();
+            Map<String, String> fragments = new LinkedHashMap<>();
+            skipIgnored();
+            while (pos < length) {
+                int start = pos;
+                if (src.charAt(pos) == '{') {
+                    if (fields != null) {
+                        return null;
+                    }
+                    fields = selectionSet();
+                    if (fields == null) {
+                        return null;
+                    }
+                } else {
+                    String keyword = name();
+                    if ("query".equals(keyword)) {
+                        if (fields != null) {
+                            return null;
+                        }
+                        skipIgnored();
+                        if (pos < length && isNameStart(src.charAt(pos))) {
+                            name();
+                            skipIgnored();
+                        }
+                        if (pos < length && src.charAt(pos) == '(') {
+                            definitions = variableDefinitions();
+                            if (definitions == null) {
+                                return null;
+                            }
+                            skipIgnored();
+                        }
+                        // 操作指令无法直接合并
+                        if (pos >= length || src.charAt(pos) != '{') {
+                            return null;
+                        }
+                        fields = selectionSet();
+                        if (fields == null) {
+                            return null;
+                        }
+                    } else if ("fragment".equals(keyword)) {
+                        skipIgnored();
+                        String fragmentName = name();
+                        if (fragmentName == null) {
+                            return null;
+                        }
+                        while (pos < length && src.charAt(pos) != '{') {
+                            if (!skipToken()) {
+                                return null;
+                            }
+                        }
+                        if (!skipBalanced('{', '}')) {
+                            return null;
+                        }
+                        // 片段在合并后的文档中共用，其中的变量无法按查询加前缀
+                        if (!variableRefs(start, pos).isEmpty()) {
+                            return null;
+                        }
+                        fragments.put(fragmentName, src.substring(start, pos));
+                    } else {
+                        // mutation、subscription 等不合并
+                        return null;
+                    }
+                }
+                skipIgnored();
+            }
+            if (fields == null || fields.isEmpty()) {
+                return null;
+            }
+            List<Integer> refs = new ArrayList<>();
+            for (Field field : fields) {
+                refs.addAll(variableRefs(field.start(), field.end()));
+            }
+            return new Part(src, fields, fragments, definitions, refs);
+        }
+
+        // 解析 ($a: Int = 1, $b: [ID!]) 形式的变量定义
+        private List<VariableDefinition> variableDefinitions() {
+            List<VariableDefinition> definitions = new ArrayList<>();
+            pos++;
+            skipIgnored();
+            while (pos < length && src.charAt(pos) != ')') {
+                if (src.charAt(pos) != '$') {
+                    return null;
+                }
+                pos++;
+                String variable = name();
+                skipIgnored();
+                if (variable == null || pos >= length || src.charAt(pos) != ':') {
+                    return null;
+                }
+                pos++;
+                int start = pos;
+                int depth = 0;
+                while (pos < length && (depth > 0 || (src.charAt(pos) != '$' && src.charAt(pos) != ')'))) {
+                    char c = src.charAt(pos);
+                    if (c == '"') {
+                        if (!skipString()) {
+                            return null;
+                        }
+                        continue;
+                    }
+                    if (c == '#') {
+                        skipComment();
+                        continue;
+                    }
+                    if (c == '[' || c == '{' || c == '(') {
+                        depth++;
+                    } else if (c == ']' || c == '}' || c == ')') {
+                        depth--;
+                    }
+                    pos++;
+                }
+                String type = src.substring(start, pos).strip();
+                if (type.indexOf('#') >= 0) {
+                    return null;
+                }
+                while (type.endsWith(",")) {
+                    type = type.substring(0, type.length() - 1).strip();
+                }
+                definitions.add(new VariableDefinition(variable, type));
+            }
+            if (pos >= length) {
+                return null;
+            }
+            pos++;
+            return definitions;
+        }
+
+        // [from, to) 范围内字符串和注释之外的 $ 位置
+        private List<Integer> variableRefs(int from, int to) {
+            List<Integer> refs = new ArrayList<>();
+            int saved = pos;
+            pos = from;
+            while (pos < to) {
+                char c = src.charAt(pos);
+                if (c == '"') {
+                    if (!skipString()) {
+                        break;
+                    }
+                } else if (c == '#') {
+                    skipComment();
+                } else {
+                    if (c == '$') {
+                        refs.add(pos);
+                    }
+                    pos++;
+                }
+            }
+            pos = saved;
+            return refs;
+        }
+
+        private List<Field> selectionSet() {
+            List<Field> fields = new ArrayList<>();
+            pos++;
+            skipIgnored();
+            while (pos < length && src.charAt(pos) != '}') {
+                if (src.charAt(pos) == '.') {
+                    // 顶层片段展开无法加别名
+                    return null;
+                }
+                int start = pos;
+                String first = name();
+                if (first == null) {
+                    return null;
+                }
+                // 字段文本的结尾，不包括其后的空白和注释
+                int end = pos;
+                skipIgnored();
+                String responseKey = first;
+                boolean aliased = false;
+                int nameStart = start;
+                if (pos < length && src.charAt(pos) == ':') {
+                    pos++;
+                    skipIgnored();
+                    nameStart = pos;
+                    if (name() == null) {
+                        return null;
+                    }
+                    aliased = true;
+                    end = pos;
+                    skipIgnored();
+                }
+                if (pos < length && src.charAt(pos) == '(') {
+                    if (!skipBalanced('(', ')')) {
+                        return null;
+                    }
+                    end = pos;
+                    skipIgnored();
+                }
+                while (pos < length && src.charAt(pos) == '@') {
+                    pos++;
+                    if (name() == null) {
+                        return null;
+                    }
+                    end = pos;
+                    skipIgnored();
+                    if (pos < length && src.charAt(pos) == '(') {
+                        if (!skipBalanced('(', ')')) {
+                            return null;
+                        }
+                        end = pos;
+                        skipIgnored();
+                    }
+                }
+                if (pos < length && src.charAt(pos) == '{') {
+                    if (!skipBalanced('{', '}')) {
+                        return null;
+                    }
+                    end = pos;
+                }
+                fields.add(new Field(start, nameStart, end, responseKey, aliased));
+                skipIgnored();
+            }
+            if (pos >= length) {
+                return null;
+            }
+            pos++;
+            return fields;
+        }
+
+        private String name() {
+            if (pos >= length || !isNameStart(src.charAt(pos))) {
+                return null;
+            }
+            int start = pos++;
+            while (pos < length && (isNameStart(src.charAt(pos)) || Character.isDigit(src.charAt(pos)))) {
+                pos++;
+            }
+            return src.substring(start, pos);
+        }
+
+        // 跳过一个记号（片段的类型条件和指令），字符串整体跳过
+        private boolean skipToken() {
+            char c = src.charAt(pos);
+            if (c == '"') {
+                return skipString();
+            }
+            if (c == '(') {
+                return skipBalanced('(', ')');
+            }
+            pos++;
+            skipIgnored();
+            return true;
+        }
+
+        private boolean skipBalanced(char open, char close) {
+            int depth = 0;
+            while (pos < length) {
+                char c = src.charAt(pos);
+                if (c == '"') {
+                    if (!skipString()) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (c == '#') {
+                    skipComment();
+                    continue;
+                }
+                pos++;
+                if (c == open) {
+                    depth++;
+                } else if (c == close && --depth == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean skipString() {
+            if (src.startsWith("\"\"\"", pos)) {
+                int end = pos + 3;
+                while (true) {
+                    end = src.indexOf("\"\"\"", end);
+                    if (end < 0) {
+                        return false;
+                    }
+                    if (src.charAt(end - 1) != '\\') {
+                        pos = end + 3;
+                        return true;
+                    }
+                    end += 3;
+                }
+            }
+            pos++;
+            while (pos < length) {
+                char c = src.charAt(pos++);
+                if (c == '\\') {
+                    pos++;
+                } else if (c == '"') {
+                    return true;
+                } else if (c == '\n' || c == '\r') {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private void skipComment() {
+            while (pos < length && src.charAt(pos) != '\n' && src.charAt(pos) != '\r') {
+                pos++;
+            }
+        }
+
+        private void skipIgnored() {
+            while (pos < length) {
+                char c = src.charAt(pos);
+                if (c == '#') {
+                    skipComment();
+                } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == '\uFEFF') {
+                    pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static boolean isNameStart(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+        }
+    }
+}
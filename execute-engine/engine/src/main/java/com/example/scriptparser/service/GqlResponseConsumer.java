@@ -0,0 +1,95 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在 I/O 线程上流式接收网关响应：状态码为200时，响应体按到达的字节块交给 GqlResponseReader 解析，
+ * 不缓存整个响应体；其他状态码的响应体读成文本放进 StatusException。
+ */
+class GqlResponseConsumer extends AbstractBinResponseConsumer<GqlResponseConsumer> {
+
+    private final ObjectMapper objectMapper;
+    private final LongAdder responseBytes;
+    private int statusCode;
+    private GqlResponseReader reader;
+    private ByteArrayOutputStream errorBody;
+    private JsonNode response;
+
+    GqlResponseConsumer(ObjectMapper objectMapper, LongAdder responseBytes) {
+        this.objectMapper = objectMapper;
+        this.responseBytes = responseBytes;
+    }
+
+    @Override
+    protected void start(HttpResponse response, ContentType contentType) throws IOException {
+        statusCode = response.getCode();
+        if (statusCode == 200) {
+            reader = new GqlResponseReader(objectMapper);
+        } else {
+            errorBody = new ByteArrayOutputStream();
+        }
+    }
+
+    @Override
+    protected int capacityIncrement() {
+        // 每块数据在 data 中即解析完，不需要限制对端的发送
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+        responseBytes.add(src.remaining());
+        if (reader != null) {
+            if (src.hasRemaining()) {
+                reader.feed(src);
+            }
+            if (endOfStream) {
+                response = reader.finish();
+            }
+        } else if (src.hasRemaining()) {
+            byte[] chunk = new byte[src.remaining()];
+            src.get(chunk);
+            errorBody.write(chunk, 0, chunk.length);
+        }
+    }
+
+    @Override
+    protected GqlResponseConsumer buildResult() {
+        return this;
+    }
+
+    /**
+     * @return 只含 data 和 errors 的响应
+     */
+    JsonNode getResponse() throws IOException {
+        if (statusCode != 200) {
+            throw new GatewayClient.StatusException(statusCode,
+                    errorBody == null ? "" : errorBody.toString(StandardCharsets.UTF_8));
+        }
+        if (response == null) {
+            throw new IOException("GraphQL gateway returned an empty response");
+        }
+        return response;
+    }
+
+    @Override
+    public void releaseResources() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("关闭网关响应解析器失败: " + e.getMessage());
+            }
+        }
+    }
+}
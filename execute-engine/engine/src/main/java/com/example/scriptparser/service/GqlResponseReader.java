@@ -0,0 +1,154 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 用Jackson的非阻塞解析器读取网关响应：响应体按到达的字节块交给解析器，边接收边构建 data 和 errors 的树，
+ * 其余字段（如 extensions）跳过，不把整个响应体缓存成 byte[] 或 String。
+ * 一个实例只读取一个响应，不是线程安全的。
+ */
+public class GqlResponseReader implements Closeable {
+
+    private final JsonNodeFactory nodes;
+    private final boolean bigDecimals;
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final ObjectNode response;
+    // data 或 errors 中尚未闭合的对象和数组，栈顶为最内层
+    private final Deque<ContainerNode<?>> open = new ArrayDeque<>();
+    // 当前对象中下一个值的字段名
+    private String fieldName;
+    // 正在跳过的顶层字段的嵌套深度
+    private int skipDepth;
+    private boolean started;
+    private boolean finished;
+
+    public GqlResponseReader(ObjectMapper objectMapper) throws IOException {
+        this.nodes = objectMapper.getNodeFactory();
+        this.bigDecimals = objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        this.parser = objectMapper.getFactory().createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.response = nodes.objectNode();
+    }
+
+    /**
+     * 解析新到达的一块响应体。返回时 src 中的字节已全部读完，调用方可以复用 src。
+     */
+    public void feed(ByteBuffer src) throws IOException {
+        feeder.feedInput(src);
+        parseAvailable();
+        // 解析器按下标读取，不移动 src 的位置
+        src.position(src.limit());
+    }
+
+    /**
+     * 响应体已结束，返回只含 data 和 errors 的响应。
+     */
+    public ObjectNode finish() throws IOException {
+        feeder.endOfInput();
+        parseAvailable();
+        if (!finished) {
+            throw new IOException("GraphQL response ended unexpectedly");
+        }
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private void parseAvailable() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            onToken(token);
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        if (finished) {
+            throw new IOException("Unexpected content after the GraphQL response");
+        }
+        if (!started) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("GraphQL response is not a JSON object");
+            }
+            started = true;
+            return;
+        }
+        if (skipDepth > 0) {
+            if (token.isStructStart()) {
+                skipDepth++;
+            } else if (token.isStructEnd()) {
+                skipDepth--;
+            }
+            return;
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            fieldName = parser.currentName();
+            return;
+        }
+        if (token.isStructEnd()) {
+            if (open.isEmpty()) {
+                finished = true;
+            } else {
+                open.pop();
+            }
+            return;
+        }
+        ContainerNode<?> parent = open.peek();
+        if (parent == null && !fieldName.equals("data") && !fieldName.equals("errors")) {
+            if (token.isStructStart()) {
+                skipDepth = 1;
+            }
+            return;
+        }
+        JsonNode value = value(token);
+        if (parent == null) {
+            response.set(fieldName, value);
+        } else if (parent instanceof ArrayNode array) {
+            array.add(value);
+        } else {
+            ((ObjectNode) parent).set(fieldName, value);
+        }
+        if (value instanceof ContainerNode<?> container) {
+            open.push(container);
+        }
+    }
+
+    // 与 readTree 构建的节点类型相同
+    private JsonNode value(JsonToken token) throws IOException {
+        return switch (token) {
+            case START_OBJECT -> nodes.objectNode();
+            case START_ARRAY -> nodes.arrayNode();
+            case VALUE_STRING -> nodes.textNode(parser.getText());
+            case VALUE_NUMBER_INT -> switch (parser.getNumberType()) {
+                case INT -> nodes.numberNode(parser.getIntValue());
+                case LONG -> nodes.numberNode(parser.getLongValue());
+                default -> nodes.numberNode(parser.getBigIntegerValue());
+            };
+            case VALUE_NUMBER_FLOAT -> bigDecimals
+                    ? nodes.numberNode(parser.getDecimalValue())
+                    : nodes.numberNode(parser.getDoubleValue());
+            case VALUE_TRUE -> nodes.booleanNode(true);
+            case VALUE_FALSE -> nodes.booleanNode(false);
+            case VALUE_NULL -> nodes.nullNode();
+            default -> throw new IOException("Unexpected token in GraphQL response: " + token);
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * GraphQL查询结果缓存。只缓存 gqlpk 中配置了 ttl 选项的只读查询，
+ * 键为 gqlpk 键加绑定变量的规范化哈希；按响应字节数限制总大小，超出时按LRU淘汰。
+ * 缓存保存响应的私有副本：put 时复制一份存入，get 时返回一份复制，
+ * 调用方可以任意使用拿到的响应，不会影响缓存和其他请求。
+ */
+@Service
+public class GqlResultCache {
+
+    @Value("${engine.gql.cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${engine.gql.cache.max-bytes:67108864}")
+    private long maxBytes = 64L * 1024 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 访问顺序，头部是最久未使用的条目
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private record Entry(String queryKey, JsonNode response, long weight, long expiresAt) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public JsonNode get(String cacheKey) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(cacheKey);
+            if (entry != null && entry.expiresAt() - System.nanoTime() <= 0) {
+                remove(cacheKey, entry);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+        } finally {
+            lock.unlock();
+        }
+        // 在锁外复制，条目中的响应不会被修改
+        return entry.response().deepCopy();
+    }
+
+    public void put(String queryKey, String cacheKey, JsonNode response, long responseBytes, long ttlNanos) {
+        long entryWeight = responseBytes + cacheKey.length();
+        if (entryWeight > maxBytes) {
+            return;
+        }
+        JsonNode copy = response.deepCopy();
+        lock.lock();
+        try {
+            Entry previous = entries.remove(cacheKey);
+            if (previous != null) {
+                weight -= previous.weight();
+            }
+            entries.put(cacheKey, new Entry(queryKey, copy, entryWeight, System.nanoTime() + ttlNanos));
+            weight += entryWeight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxBytes && eldest.hasNext()) {
+                Entry entry = eldest.next();
+                eldest.remove();
+                weight -= entry.weight();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 删除某个 gqlpk 键的全部缓存结果
+    public int invalidateKey(String queryKey) {
+        return invalidate(queryKey::equals);
+    }
+
+    // 删除 gqlpk 键以 prefix 开头的全部缓存结果
+    public int invalidatePrefix(String prefix) {
+        return invalidate(key -> key.startsWith(prefix));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        lock.lock();
+        try {
+            stats.put("enabled", enabled);
+            stats.put("entries", entries.size());
+            stats.put("weightBytes", weight);
+            stats.put("maxBytes", maxBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private int invalidate(Predicate<String> queryKeyMatcher) {
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (queryKeyMatcher.test(entry.queryKey())) {
+                    it.remove();
+                    weight -= entry.weight();
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        invalidations.add(removed);
+        return removed;
+    }
+
+    private void remove(String cacheKey, Entry entry) {
+        entries.remove(cacheKey);
+        weight -= entry.weight();
+    }
+}
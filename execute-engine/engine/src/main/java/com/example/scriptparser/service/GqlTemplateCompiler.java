@@ -0,0 +1,391 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.GqlSchema;
+import com.example.scriptparser.model.GqlTemplate;
+import com.example.scriptparser.util.HashUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 上传时把 gqlpk 模板预编译为固定的查询文档：${x.y} 占位符替换为GraphQL变量 $x_y，
+ * 变量类型按占位符所在的参数位置从网关schema推断，并补充到操作的变量定义中。
+ * 占位符在字符串内、在schema中找不到的字段或指令参数里时无法确定类型，抛出异常由调用方改用拼接方式。
+ */
+public class GqlTemplateCompiler {
+
+    // kind：N 名称、P 占位符、V 字符串或数字、S 展开符 ...，其余为标点本身
+    private record Token(char kind, int start, int end) {
+    }
+
+    private record Use(String placeholder, String type, Token token) {
+    }
+
+    private record Edit(int start, int end, String replacement) {
+    }
+
+    private final String src;
+    private final GqlSchema schema;
+    private final List<Token> tokens = new ArrayList<>();
+    private final List<Use> uses = new ArrayList<>();
+    private final Set<String> declaredVariables = new HashSet<>();
+    private int index;
+    private int operations;
+    private Edit definitions;
+
+    private GqlTemplateCompiler(String src, GqlSchema schema) {
+        this.src = src;
+        this.schema = schema;
+    }
+
+    public static GqlTemplate.Document compile(String template, GqlSchema schema) throws Exception {
+        return new GqlTemplateCompiler(template, schema).compile();
+    }
+
+    private GqlTemplate.Document compile() throws Exception {
+        tokenize();
+        while (index < tokens.size()) {
+            Token token = tokens.get(index);
+            if (token.kind() == '{') {
+                // 简写形式的查询，变量定义需要补上 query 关键字
+                operation(token.start(), "query(", ") ");
+                selectionSet(schema.rootType("query"));
+            } else if (isName("fragment")) {
+                next();
+                name();
+                expectName("on");
+                String typeCondition = name();
+                directives();
+                selectionSet(typeCondition);
+            } else if (isName("query") || isName("mutation") || isName("subscription")) {
+                String operationType = text(next());
+                int insertAt = token.end();
+                if (peek() == 'N') {
+                    insertAt = next().end();
+                }
+                if (peek() == '(') {
+                    next();
+                    while (peek() != ')') {
+                        variableDefinition();
+                    }
+                    operation(next().start(), ", ", "");
+                } else {
+                    operation(insertAt, "(", ")");
+                }
+                directives();
+                selectionSet(schema.rootType(operationType));
+            } else {
+                throw new Exception("unexpected '" + text(token) + "'");
+            }
+        }
+        if (operations != 1) {
+            throw new Exception("template must contain exactly one operation");
+        }
+        return build();
+    }
+
+    private GqlTemplate.Document build() throws Exception {
+        if (uses.isEmpty()) {
+            return new GqlTemplate.Document(src, Map.of(), HashUtil.sha256(src));
+        }
+        Map<String, String> types = new LinkedHashMap<>();
+        for (Use use : uses) {
+            String previous = types.putIfAbsent(use.placeholder(), use.type());
+            if (previous != null && !previous.equals(use.type())) {
+                throw new Exception("${" + use.placeholder() + "} is used as both " + previous + " and " + use.type());
+            }
+        }
+        Map<String, String> variables = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>(declaredVariables);
+        StringBuilder declarations = new StringBuilder();
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+            String base = entry.getKey().replace('.', '_');
+            if (Character.isDigit(base.charAt(0))) {
+                base = "_" + base;
+            }
+            String variable = base;
+            for (int n = 2; !used.add(variable); n++) {
+                variable = base + "_" + n;
+            }
+            variables.put(entry.getKey(), variable);
+            if (declarations.length() > 0) {
+                declarations.append(", ");
+            }
+            declarations.append('$').append(variable).append(": ").append(entry.getValue());
+        }
+
+        List<Edit> edits = new ArrayList<>();
+        edits.add(new Edit(definitions.start(), definitions.end(),
+                definitions.replacement().replace("%s", declarations)));
+        for (Use use : uses) {
+            edits.add(new Edit(use.token().start(), use.token().end(), "$" + variables.get(use.placeholder())));
+        }
+        edits.sort(Comparator.comparingInt(Edit::start));
+        StringBuilder query = new StringBuilder(src.length() + declarations.length() + 16);
+        int last = 0;
+        for (Edit edit : edits) {
+            query.append(src, last, edit.start()).append(edit.replacement());
+            last = edit.end();
+        }
+        query.append(src, last, src.length());
+        String document = query.toString();
+        return new GqlTemplate.Document(document, Collections.unmodifiableMap(variables), HashUtil.sha256(document));
+    }
+
+    // 记录变量定义的插入位置，%s 为新增的变量定义
+    private void operation(int insertAt, String before, String after) {
+        operations++;
+        definitions = new Edit(insertAt, insertAt, before + "%s" + after);
+    }
+
+    private void variableDefinition() throws Exception {
+        expect('$');
+        declaredVariables.add(name());
+        expect(':');
+        type();
+        if (peek() == '=') {
+            next();
+            value(null);
+        }
+        directives();
+    }
+
+    private void type() throws Exception {
+        if (peek() == '[') {
+            next();
+            type();
+            expect(']');
+        } else {
+            name();
+        }
+        if (peek() == '!') {
+            next();
+        }
+    }
+
+    private void selectionSet(String typeName) throws Exception {
+        expect('{');
+        while (peek() != '}') {
+            selection(typeName);
+        }
+        next();
+    }
+
+    private void selection(String typeName) throws Exception {
+        if (peek() == 'S') {
+            next();
+            if (isName("on")) {
+                next();
+                String typeCondition = name();
+                directives();
+                selectionSet(typeCondition);
+            } else if (peek() == 'N') {
+                name();
+                directives();
+            } else {
+                directives();
+                selectionSet(typeName);
+            }
+            return;
+        }
+        String fieldName = name();
+        if (peek() == ':') {
+            next();
+            fieldName = name();
+        }
+        GqlSchema.Field field = schema.field(typeName, fieldName);
+        if (peek() == '(') {
+            arguments(field == null ? null : field.args());
+        }
+        directives();
+        if (peek() == '{') {
+            selectionSet(field == null || field.type() == null ? null : field.type().namedType());
+        }
+    }
+
+    private void arguments(Map<String, GqlSchema.TypeRef> definitions) throws Exception {
+        expect('(');
+        while (peek() != ')') {
+            String argument = name();
+            expect(':');
+            value(definitions == null ? null : definitions.get(argument));
+        }
+        next();
+    }
+
+    private void directives() throws Exception {
+        while (peek() == '@') {
+            next();
+            String directive = name();
+            if (peek() == '(') {
+                arguments(schema.directiveArgs(directive));
+            }
+        }
+    }
+
+    private void value(GqlSchema.TypeRef type) throws Exception {
+        Token token = next();
+        switch (token.kind()) {
+            case 'P' -> {
+                String placeholder = src.substring(token.start() + 2, token.end() - 1);
+                if (type == null) {
+                    throw new Exception("cannot infer the type of ${" + placeholder + "}");
+                }
+                uses.add(new Use(placeholder, type.render(), token));
+            }
+            case '$' -> name();
+            case '[' -> {
+                GqlSchema.TypeRef element = type == null ? null : type.elementType();
+                while (peek() != ']') {
+                    value(element);
+                }
+                next();
+            }
+            case '{' -> {
+                String inputType = type == null ? null : type.namedType();
+                while (peek() != '}') {
+                    String field = name();
+                    expect(':');
+                    value(schema.inputField(inputType, field));
+                }
+                next();
+            }
+            case 'N', 'V' -> {
+            }
+            default -> throw new Exception("unexpected '" + text(token) + "'");
+        }
+    }
+
+    private void tokenize() throws Exception {
+        int length = src.length();
+        int i = 0;
+        while (i < length) {
+            char c = src.charAt(i);
+            int start = i;
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == '\uFEFF') {
+                i++;
+                continue;
+            }
+            if (c == '#') {
+                while (i < length && src.charAt(i) != '\n' && src.charAt(i) != '\r') {
+                    i++;
+                }
+                continue;
+            }
+            char kind;
+            if (c == '"') {
+                i = skipString(i);
+                if (src.substring(start, i).contains("${")) {
+                    throw new Exception("placeholder inside a string literal");
+                }
+                kind = 'V';
+            } else if (c == '$' && i + 1 < length && src.charAt(i + 1) == '{') {
+                i = src.indexOf('}', i) + 1;
+                if (i == 0 || !GqlTemplate.VARIABLE_PATTERN.matcher(src.substring(start, i)).matches()) {
+                    throw new Exception("malformed placeholder");
+                }
+                kind = 'P';
+            } else if (src.startsWith("...", i)) {
+                i += 3;
+                kind = 'S';
+            } else if (isNameStart(c)) {
+                while (i < length && (isNameStart(src.charAt(i)) || Character.isDigit(src.charAt(i)))) {
+                    i++;
+                }
+                kind = 'N';
+            } else if (c == '-' || Character.isDigit(c)) {
+                i++;
+                while (i < length && (Character.isLetterOrDigit(src.charAt(i)) || src.charAt(i) == '.'
+                        || ((src.charAt(i) == '+' || src.charAt(i) == '-') && (src.charAt(i - 1) == 'e' || src.charAt(i - 1) == 'E')))) {
+                    i++;
+                }
+                kind = 'V';
+            } else if ("!$&():=@[]{}|".indexOf(c) >= 0) {
+                i++;
+                kind = c;
+            } else {
+                throw new Exception("unexpected character '" + c + "'");
+            }
+            tokens.add(new Token(kind, start, i));
+        }
+    }
+
+    private int skipString(int i) throws Exception {
+        if (src.startsWith("\"\"\"", i)) {
+            int end = i + 3;
+            while (true) {
+                end = src.indexOf("\"\"\"", end);
+                if (end < 0) {
+                    throw new Exception("unterminated block string");
+                }
+                if (src.charAt(end - 1) != '\\') {
+                    return end + 3;
+                }
+                end += 3;
+            }
+        }
+        i++;
+        while (i < src.length()) {
+            char c = src.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            } else if (c == '\n' || c == '\r') {
+                break;
+            }
+        }
+        throw new Exception("unterminated string");
+    }
+
+    private char peek() {
+        return index < tokens.size() ? tokens.get(index).kind() : 0;
+    }
+
+    private Token next() throws Exception {
+        if (index >= tokens.size()) {
+            throw new Exception("unexpected end of template");
+        }
+        return tokens.get(index++);
+    }
+
+    private void expect(char kind) throws Exception {
+        Token token = next();
+        if (token.kind() != kind) {
+            throw new Exception("expected '" + kind + "' but found '" + text(token) + "'");
+        }
+    }
+
+    private boolean isName(String name) {
+        return peek() == 'N' && text(tokens.get(index)).equals(name);
+    }
+
+    private void expectName(String name) throws Exception {
+        if (!isName(name)) {
+            throw new Exception("expected '" + name + "'");
+        }
+        next();
+    }
+
+    private String name() throws Exception {
+        Token token = next();
+        if (token.kind() != 'N') {
+            throw new Exception("expected a name but found '" + text(token) + "'");
+        }
+        return text(token);
+    }
+
+    private String text(Token token) {
+        return src.substring(token.start(), token.end());
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接可写时才序列化请求体，每次只生成一块（约 CHUNK_SIZE 字节）写到连接上；连接写不下时暂停序列化，
+ * 下次可写时从暂停处继续，内存中只保留当前这一块，不序列化成完整的 byte[]。
+ * 序列化按 treeAsTokens 逐个 token 复制到 JsonGenerator，可以在任意 token 之间暂停。
+ * 请求体长度事先未知，按分块编码发送。重发请求时从头重新序列化。
+ */
+class JsonEntityProducer implements AsyncEntityProducer {
+
+    // 每块的目标大小。一块在超过它之后的第一个 token 处结束，超出的部分不超过生成器的缓冲区加一个 token
+    static final int CHUNK_SIZE = 8192;
+
+    private final ObjectMapper objectMapper;
+    private final JsonNode body;
+    // 第一次写出时调用，此时连接已经就绪
+    private final Runnable onStart;
+    // 写出的字节数，为 null 时不统计
+    private final LongAdder bytesWritten;
+    private boolean started;
+    // 序列化的状态，第一次写出时创建，releaseResources 后重新开始
+    private JsonParser tokens;
+    private JsonGenerator generator;
+    private Chunk chunk;
+    private boolean serialized;
+    // 当前块中连接还没有接收的部分
+    private ByteBuffer pending;
+
+    JsonEntityProducer(ObjectMapper objectMapper, JsonNode body, Runnable onStart, LongAdder bytesWritten) {
+        this.objectMapper = objectMapper;
+        this.body = body;
+        this.onStart = onStart;
+        this.bytesWritten = bytesWritten;
+    }
+
+    @Override
+    public String getContentType() {
+        return ContentType.APPLICATION_JSON.toString();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getTrailerNames() {
+        return null;
+    }
+
+    @Override
+    public int available() {
+        if (pending != null && pending.hasRemaining()) {
+            return pending.remaining();
+        }
+        return serialized ? 0 : CHUNK_SIZE;
+    }
+
+    @Override
+    public void produce(DataStreamChannel channel) throws IOException {
+        if (!started) {
+            started = true;
+            onStart.run();
+        }
+        if (generator == null) {
+            tokens = objectMapper.treeAsTokens(body);
+            chunk = new Chunk();
+            generator = objectMapper.getFactory().createGenerator(chunk);
+        }
+        while (true) {
+            if (pending != null && pending.hasRemaining()) {
+                int written = channel.write(pending);
+                if (bytesWritten != null) {
+                    bytesWritten.add(written);
+                }
+                if (pending.hasRemaining()) {
+                    // 连接写满，等下次可写时继续
+                    return;
+                }
+            }
+            if (serialized) {
+                pending = null;
+                channel.endStream();
+                return;
+            }
+            pending = nextChunk();
+        }
+    }
+
+    // 生成下一块。上一块已经全部写出，复用它的缓冲区
+    private ByteBuffer nextChunk() throws IOException {
+        chunk.reset();
+        while (chunk.size() + generator.getOutputBuffered() < CHUNK_SIZE) {
+            if (tokens.nextToken() == null) {
+                generator.close();
+                tokens.close();
+                serialized = true;
+                return chunk.toByteBuffer();
+            }
+            generator.copyCurrentEvent(tokens);
+        }
+        generator.flush();
+        return chunk.toByteBuffer();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public void failed(Exception cause) {
+        releaseResources();
+    }
+
+    // 重发时 produce 从头序列化
+    @Override
+    public void releaseResources() {
+        if (generator != null) {
+            try {
+                generator.close();
+                tokens.close();
+            } catch (IOException e) {
+                System.err.println("关闭请求体生成器失败: " + e.getMessage());
+            }
+        }
+        tokens = null;
+        generator = null;
+        chunk = null;
+        serialized = false;
+        pending = null;
+    }
+
+    // 当前块的缓冲区，直接包装成 ByteBuffer 写出，不再复制
+    private static class Chunk extends ByteArrayOutputStream {
+
+        Chunk() {
+            super(CHUNK_SIZE);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
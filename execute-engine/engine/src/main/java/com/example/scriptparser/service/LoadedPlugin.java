@@ -0,0 +1,121 @@
+package com.example.scriptparser.service;
+
+import com.example.api.ArgumentHandlerService;
+import com.example.api.HandlerService;
+import com.example.api.TypedHandlerService;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.pf4j.PluginManager;
+import org.pf4j.PluginState;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 从一个jar加载的插件，使用单独的 PluginManager，可以不影响其他插件单独加载和卸载。
+ * 内容未变化的jar在相邻的插件代之间共享，没有任何一代引用时才停止并卸载。
+ * 绑定插件输入类型的 ObjectReader 按插件缓存，插件卸载后不再引用插件的类。
+ */
+class LoadedPlugin {
+
+    private final Path jar;
+    private final String checksum;
+    private final PluginManager pluginManager;
+    private final String pluginId;
+    private final List<PluginHandler> handlers;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private LoadedPlugin(Path jar, String checksum, PluginManager pluginManager, String pluginId,
+                         List<PluginHandler> handlers) {
+        this.jar = jar;
+        this.checksum = checksum;
+        this.pluginManager = pluginManager;
+        this.pluginId = pluginId;
+        this.handlers = handlers;
+    }
+
+    /**
+     * 加载并启动jar中的插件。启动失败或没有提供任何处理器时卸载插件并抛出异常，
+     * 不留下加载了一半的插件和它的类加载器，调用方继续使用旧版本。
+     */
+    static LoadedPlugin load(PluginManager pluginManager, Path jar, String checksum) throws Exception {
+        String pluginId = pluginManager.loadPlugin(jar);
+        if (pluginId == null) {
+            throw new Exception("插件 " + jar.getFileName() + " 加载失败");
+        }
+        try {
+            // PF4J 启动失败时不抛出异常，只把插件标记为 FAILED
+            PluginState state = pluginManager.startPlugin(pluginId);
+            if (state != PluginState.STARTED) {
+                throw new Exception("插件 " + pluginId + " 启动失败，状态: " + state);
+            }
+            List<PluginHandler> handlers = new ArrayList<>();
+            for (HandlerService handler : pluginManager.getExtensions(HandlerService.class, pluginId)) {
+                handlers.add(new PluginHandler.Json(handler));
+            }
+            for (ArgumentHandlerService handler : pluginManager.getExtensions(ArgumentHandlerService.class, pluginId)) {
+                handlers.add(new PluginHandler.Arguments(handler));
+            }
+            for (TypedHandlerService<?> handler : pluginManager.getExtensions(TypedHandlerService.class, pluginId)) {
+                handlers.add(typed(handler));
+            }
+            if (handlers.isEmpty()) {
+                throw new Exception("插件 " + pluginId + " 没有提供任何处理器");
+            }
+            return new LoadedPlugin(jar, checksum, pluginManager, pluginId, List.copyOf(handlers));
+        } catch (Exception | LinkageError e) {
+            unload(pluginManager, pluginId);
+            throw e;
+        }
+    }
+
+    private static void unload(PluginManager pluginManager, String pluginId) {
+        try {
+            pluginManager.stopPlugin(pluginId);
+        } catch (Exception e) {
+            System.err.println("停止插件 " + pluginId + " 失败: " + e.getMessage());
+        }
+        if (!pluginManager.unloadPlugin(pluginId)) {
+            System.err.println("卸载插件 " + pluginId + " 失败");
+        }
+    }
+
+    private static <I> PluginHandler typed(TypedHandlerService<I> handler) {
+        return new PluginHandler.Typed<>(handler);
+    }
+
+    Path getJar() {
+        return jar;
+    }
+
+    String getChecksum() {
+        return checksum;
+    }
+
+    String getPluginId() {
+        return pluginId;
+    }
+
+    List<PluginHandler> getHandlers() {
+        return handlers;
+    }
+
+    ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, PluginHandler.OBJECT_MAPPER::readerFor);
+    }
+
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            unload(pluginManager, pluginId);
+            System.out.println("插件已卸载: " + pluginId + " (" + jar.getFileName() + ")");
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.util.KeyedBatcher;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把同一插件函数上并发的调用合并为一次批量调用，只用于实现了批量调用的插件函数。
+ * 按 "插件ID:函数名@校验和" 聚合，不同版本的插件不会合并，也不会因为键而保留已卸载的插件。
+ */
+public class PluginBatcher {
+
+    private record Call(PluginFunction function, ContextArguments arguments) {
+    }
+
+    private final long windowNanos;
+    private final int maxSize;
+    private final KeyedBatcher<String, Call, JsonNode> batcher = new KeyedBatcher<>(PluginBatcher::run);
+
+    public PluginBatcher(long windowMillis, int maxSize) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxSize = maxSize;
+    }
+
+    JsonNode call(PluginFunction function, ContextArguments arguments) throws Exception {
+        String key = PluginRegistry.qualifiedName(function.pluginId(), function.functionName())
+                + "@" + function.plugin().getChecksum();
+        return batcher.execute(key, new Call(function, arguments), windowNanos, maxSize);
+    }
+
+    // 同一批中的调用来自同一个jar的同一个函数，用哪一项的 PluginFunction 都一样
+    private static List<JsonNode> run(String key, List<Call> calls) throws Exception {
+        List<ContextArguments> batch = new ArrayList<>(calls.size());
+        for (Call call : calls) {
+            batch.add(call.arguments());
+        }
+        return calls.get(0).function().invokeBatch(batch);
+    }
+
+    public Map<String, Object> getStats() {
+        return batcher.getStats();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.scriptparser.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个插件专用的线程池。插件调用在池中执行，调用线程最多等待 timeoutMillis；
+ * 并发和排队都已满时直接拒绝。慢的或卡住的插件只占满自己的线程池，不会占用请求线程和其他插件。
+ * 超时的调用会被中断，但在插件真正返回前仍占用池中的线程。
+ */
+public class PluginBulkhead {
+
+    /**
+     * @param maxConcurrent 同时执行的调用数
+     * @param maxQueue      等待执行的调用数，0 表示不排队
+     * @param timeoutMillis 调用方等待的时间，包括排队时间，0 表示不限
+     */
+    public record Settings(int maxConcurrent, int maxQueue, long timeoutMillis) {
+    }
+
+    private final String pluginId;
+    private final Settings settings;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public PluginBulkhead(String pluginId, Settings settings) {
+        this.pluginId = pluginId;
+        this.settings = settings;
+        BlockingQueue<Runnable> queue = settings.maxQueue() > 0
+                ? new ArrayBlockingQueue<>(settings.maxQueue())
+                : new SynchronousQueue<>();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(settings.maxConcurrent(), settings.maxConcurrent(),
+                60, TimeUnit.SECONDS, queue, runnable -> {
+                    Thread thread = new Thread(runnable, "plugin-" + pluginId + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        // 空闲的插件不保留线程
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public <T> T call(Callable<T> task) throws Exception {
+        calls.increment();
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new Exception("插件 " + pluginId + " 的并发调用已满，调用被拒绝。");
+        }
+        try {
+            return settings.timeoutMillis() > 0
+                    ? future.get(settings.timeoutMillis(), TimeUnit.MILLISECONDS)
+                    : future.get();
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            future.cancel(true);
+            throw new Exception("插件 " + pluginId + " 调用超过 " + settings.timeoutMillis() + " 毫秒。");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            failures.increment();
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrent", settings.maxConcurrent());
+        stats.put("maxQueue", settings.maxQueue());
+        stats.put("timeoutMillis", settings.timeoutMillis());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("calls", calls.sum());
+        stats.put("rejections", rejections.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // 插件已移除：不再接收新的调用，已提交的调用执行完后线程退出
+    void retire() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.ExecutionContext;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 插件函数索引中的一项：插件中的一个函数，以及该插件的线程池隔离、结果缓存和调用合并。
+ *
+ * @param bulkhead 未启用隔离时为 null，在调用线程上直接执行
+ * @param cache    不是纯函数或未启用缓存时为 null
+ * @param batcher  插件没有实现批量调用或未启用合并时为 null
+ */
+record PluginFunction(String pluginId, String functionName, PluginHandler handler, LoadedPlugin plugin,
+                      PluginBulkhead bulkhead, PluginResultCache cache, PluginBatcher batcher) {
+
+    /**
+     * @param names 脚本中的参数名
+     * @param slots 各参数在执行上下文中的槽位
+     * @return 赋给脚本目标变量的值
+     */
+    public JsonNode call(List<String> names, int[] slots, ExecutionContext context) throws Exception {
+        ContextArguments arguments = arguments(names, slots, context);
+        if (cache == null) {
+            return invoke(arguments);
+        }
+        PluginResultCache.Key key = new PluginResultCache.Key(pluginId, functionName, plugin.getChecksum(),
+                names, arguments.toArray());
+        JsonNode result = cache.get(key);
+        if (result == null) {
+            result = invoke(arguments);
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    // 插件实现了批量调用
+    public boolean isBatched() {
+        return handler.isBatched();
+    }
+
+    ContextArguments arguments(List<String> names, int[] slots, ExecutionContext context) {
+        return new ContextArguments(names, slots, context, PluginHandler.OBJECT_MAPPER, plugin::reader);
+    }
+
+    private JsonNode invoke(ContextArguments arguments) throws Exception {
+        if (batcher != null) {
+            return batcher.call(this, arguments);
+        }
+        if (bulkhead == null) {
+            return handler.invoke(arguments);
+        }
+        return bulkhead.call(() -> handler.invoke(arguments));
+    }
+
+    /**
+     * 对多组参数调用一次批量处理。纯函数先逐组查结果缓存，只有未命中的参数组成批次，结果写回缓存。
+     *
+     * @return 与 batch 一一对应的结果
+     */
+    List<JsonNode> callBatch(List<String> names, List<ContextArguments> batch) throws Exception {
+        if (cache == null) {
+            return invokeBatch(batch);
+        }
+        JsonNode[] results = new JsonNode[batch.size()];
+        PluginResultCache.Key[] keys = new PluginResultCache.Key[batch.size()];
+        List<ContextArguments> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            keys[i] = new PluginResultCache.Key(pluginId, functionName, plugin.getChecksum(),
+                    names, batch.get(i).toArray());
+            results[i] = cache.get(keys[i]);
+            if (results[i] == null) {
+                misses.add(batch.get(i));
+                missIndexes.add(i);
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<JsonNode> computed = invokeBatch(misses);
+            for (int i = 0; i < missIndexes.size(); i++) {
+                int index = missIndexes.get(i);
+                results[index] = computed.get(i);
+                cache.put(keys[index], results[index]);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 一次调用处理多组参数，整批占用插件线程池中的一个线程，超时对整批计算。
+     *
+     * @return 与 batch 一一对应的结果
+     */
+    List<JsonNode> invokeBatch(List<ContextArguments> batch) throws Exception {
+        if (bulkhead == null) {
+            return handler.invokeBatch(batch);
+        }
+        return bulkhead.call(() -> handler.invokeBatch(batch));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.scriptparser.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * 一代插件：插件目录中各个jar加载出的插件及其函数索引。
+ * 执行脚本时从第一次插件调用起固定使用同一代；重载后旧的一代不再被新的执行获取，
+ * 等固定在它上面的执行全部结束后才释放其中的插件，不再被新一代引用的插件随之卸载。
+ */
+public class PluginGeneration {
+
+    private final long number;
+    private final List<LoadedPlugin> plugins;
+    private final PluginRegistry registry;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicBoolean unloaded = new AtomicBoolean();
+    private volatile boolean retired;
+    private volatile Runnable onDrained;
+
+    PluginGeneration(long number, List<LoadedPlugin> plugins,
+                     BiFunction<LoadedPlugin, PluginHandler, PluginFunction> functions) {
+        this.number = number;
+        this.plugins = List.copyOf(plugins);
+        this.registry = PluginRegistry.build(this.plugins, functions);
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public PluginRegistry getRegistry() {
+        return registry;
+    }
+
+    List<LoadedPlugin> getPlugins() {
+        return plugins;
+    }
+
+    PluginFunction find(String qualifiedName, String functionName) throws Exception {
+        return registry.find(qualifiedName, functionName);
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    // 已退役时返回 false，调用方改为获取当前的一代
+    boolean tryAcquire() {
+        active.incrementAndGet();
+        if (retired) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        if (active.decrementAndGet() == 0 && retired) {
+            drained();
+        }
+    }
+
+    void retire(Runnable onDrained) {
+        this.onDrained = onDrained;
+        retired = true;
+        if (active.get() == 0) {
+            drained();
+        }
+    }
+
+    private void drained() {
+        if (unloaded.compareAndSet(false, true)) {
+            onDrained.run();
+        }
+    }
+
+    void unload() {
+        for (LoadedPlugin plugin : plugins) {
+            plugin.release();
+        }
+    }
+}
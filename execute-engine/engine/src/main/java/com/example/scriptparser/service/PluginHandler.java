@@ -0,0 +1,224 @@
+package com.example.scriptparser.service;
+
+import com.example.api.ArgumentHandlerService;
+import com.example.api.BatchHandlerService;
+import com.example.api.HandlerService;
+import com.example.api.PluginArguments;
+import com.example.api.Pure;
+import com.example.api.TypedHandlerService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 插件中的一个函数，统一三种插件接口的调用方式，返回赋给脚本目标变量的值。
+ */
+abstract class PluginHandler {
+
+    // 插件参数的绑定和结果的转换共用
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final boolean pure;
+    private final boolean batched;
+
+    PluginHandler(Object service, boolean batched) {
+        this.pure = service.getClass().isAnnotationPresent(Pure.class);
+        this.batched = batched;
+    }
+
+    abstract String getName();
+
+    // 实现类标注了 @Pure，结果可以缓存
+    boolean isPure() {
+        return pure;
+    }
+
+    // 插件实现了批量调用，并发的调用值得合并
+    boolean isBatched() {
+        return batched;
+    }
+
+    abstract JsonNode invoke(ContextArguments arguments) throws Exception;
+
+    /**
+     * @return 与 batch 一一对应的结果；插件没有实现批量调用时逐次调用
+     */
+    List<JsonNode> invokeBatch(List<ContextArguments> batch) throws Exception {
+        List<JsonNode> results = new ArrayList<>(batch.size());
+        for (ContextArguments arguments : batch) {
+            results.add(invoke(arguments));
+        }
+        return results;
+    }
+
+    /**
+     * 原有的 handle(JsonNode) 插件：参数组装成一个对象传入，取结果的第一个字段。
+     */
+    static class Json extends PluginHandler {
+
+        private final HandlerService handler;
+
+        Json(HandlerService handler) {
+            super(handler, handler instanceof BatchHandlerService);
+            this.handler = handler;
+        }
+
+        @Override
+        String getName() {
+            return handler.getName();
+        }
+
+        @Override
+        JsonNode invoke(ContextArguments arguments) throws Exception {
+            return first(handler.handle(input(arguments)));
+        }
+
+        @Override
+        List<JsonNode> invokeBatch(List<ContextArguments> batch) throws Exception {
+            if (!(handler instanceof BatchHandlerService batchHandler)) {
+                return super.invokeBatch(batch);
+            }
+            List<JsonNode> inputs = new ArrayList<>(batch.size());
+            for (ContextArguments arguments : batch) {
+                inputs.add(input(arguments));
+            }
+            List<JsonNode> results = batchHandler.handleBatch(inputs);
+            checkSize(results, batch);
+            List<JsonNode> values = new ArrayList<>(results.size());
+            for (JsonNode result : results) {
+                values.add(first(result));
+            }
+            return values;
+        }
+
+        private static JsonNode input(ContextArguments arguments) {
+            Map<String, Object> input = new HashMap<>();
+            for (int i = 0; i < arguments.size(); i++) {
+                input.put(arguments.name(i), arguments.value(i));
+            }
+            return OBJECT_MAPPER.valueToTree(input);
+        }
+
+        // 插件返回一个kv对，取第一个
+        private static JsonNode first(JsonNode result) throws Exception {
+            Iterator<String> fieldNames = result.fieldNames();
+            if (fieldNames.hasNext()) {
+                return result.get(fieldNames.next());
+            }
+            throw new Exception("插件返回结果为空。");
+        }
+    }
+
+    static class Arguments extends PluginHandler {
+
+        private final ArgumentHandlerService handler;
+
+        Arguments(ArgumentHandlerService handler) {
+            super(handler, overrides(handler, ArgumentHandlerService.class));
+            this.handler = handler;
+        }
+
+        @Override
+        String getName() {
+            return handler.getName();
+        }
+
+        @Override
+        JsonNode invoke(ContextArguments arguments) throws Exception {
+            return output(handler.handle(arguments));
+        }
+
+        @Override
+        List<JsonNode> invokeBatch(List<ContextArguments> batch) throws Exception {
+            return outputs(handler.handleBatch(new ArrayList<PluginArguments>(batch)), batch);
+        }
+    }
+
+    static class Typed<I> extends PluginHandler {
+
+        private final TypedHandlerService<I> handler;
+        private final Class<I> inputType;
+
+        Typed(TypedHandlerService<I> handler) {
+            super(handler, overrides(handler, TypedHandlerService.class));
+            this.handler = handler;
+            this.inputType = handler.getInputType();
+        }
+
+        @Override
+        String getName() {
+            return handler.getName();
+        }
+
+        @Override
+        JsonNode invoke(ContextArguments arguments) throws Exception {
+            return output(handler.handle(arguments.bind(inputType)));
+        }
+
+        @Override
+        List<JsonNode> invokeBatch(List<ContextArguments> batch) throws Exception {
+            List<I> inputs = new ArrayList<>(batch.size());
+            for (ContextArguments arguments : batch) {
+                inputs.add(arguments.bind(inputType));
+            }
+            return outputs(handler.handleBatch(inputs), batch);
+        }
+    }
+
+    // 实现类覆盖了接口中 handleBatch 的默认实现
+    private static boolean overrides(Object handler, Class<?> type) {
+        try {
+            return handler.getClass().getMethod("handleBatch", List.class).getDeclaringClass() != type;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static void checkSize(List<?> results, List<ContextArguments> batch) throws Exception {
+        if (results == null || results.size() != batch.size()) {
+            throw new Exception("插件批量调用返回的结果数与输入数不一致。");
+        }
+    }
+
+    private static List<JsonNode> outputs(List<? extends Map<String, ?>> results, List<ContextArguments> batch)
+            throws Exception {
+        checkSize(results, batch);
+        List<JsonNode> values = new ArrayList<>(results.size());
+        for (Map<String, ?> result : results) {
+            values.add(output(result));
+        }
+        return values;
+    }
+
+    // 只有一个结果时直接返回，多个结果以结果名为字段组成对象，JsonNode 类型的结果不复制
+    static JsonNode output(Map<String, ?> outputs) throws Exception {
+        if (outputs == null || outputs.isEmpty()) {
+            throw new Exception("插件返回结果为空。");
+        }
+        if (outputs.size() == 1) {
+            return toNode(outputs.values().iterator().next());
+        }
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        for (Map.Entry<String, ?> entry : outputs.entrySet()) {
+            node.set(entry.getKey(), toNode(entry.getValue()));
+        }
+        return node;
+    }
+
+    private static JsonNode toNode(Object value) {
+        if (value == null) {
+            return NullNode.getInstance();
+        }
+        if (value instanceof JsonNode node) {
+            return node;
+        }
+        return OBJECT_MAPPER.valueToTree(value);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.scriptparser.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * 插件函数的只读索引，在插件加载后一次性构建，重载时整体替换。
+ * 以 "插件ID:函数名" 为键，不同插件中的同名函数互不覆盖；
+ * 函数名在所有插件中唯一时也可以只按函数名找到，兼容插件名与插件ID不一致的脚本。
+ */
+public class PluginRegistry {
+
+    private final Map<String, PluginFunction> handlers;
+    private final Map<String, PluginFunction> uniqueFunctions;
+    private final Set<String> ambiguousFunctions;
+
+    private PluginRegistry(Map<String, PluginFunction> handlers, Map<String, PluginFunction> uniqueFunctions,
+                           Set<String> ambiguousFunctions) {
+        this.handlers = handlers;
+        this.uniqueFunctions = uniqueFunctions;
+        this.ambiguousFunctions = ambiguousFunctions;
+    }
+
+    public static String qualifiedName(String pluginId, String functionName) {
+        return pluginId + ":" + functionName;
+    }
+
+    /**
+     * @param functions 为插件中的函数创建索引项，带上该插件的线程池隔离等
+     */
+    static PluginRegistry build(List<LoadedPlugin> plugins,
+                                BiFunction<LoadedPlugin, PluginHandler, PluginFunction> functions) {
+        Map<String, PluginFunction> handlers = new HashMap<>();
+        Map<String, PluginFunction> byFunction = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        for (LoadedPlugin plugin : plugins) {
+            for (PluginHandler handler : plugin.getHandlers()) {
+                String functionName = handler.getName();
+                PluginFunction function = functions.apply(plugin, handler);
+                if (handlers.putIfAbsent(qualifiedName(plugin.getPluginId(), functionName), function) != null) {
+                    System.err.println("插件 " + plugin.getPluginId() + " 中的函数 " + functionName + " 重复，只使用第一个");
+                    continue;
+                }
+                if (byFunction.putIfAbsent(functionName, function) != null) {
+                    ambiguous.add(functionName);
+                }
+            }
+        }
+        byFunction.keySet().removeAll(ambiguous);
+        return new PluginRegistry(Map.copyOf(handlers), Map.copyOf(byFunction), Set.copyOf(ambiguous));
+    }
+
+    /**
+     * @param qualifiedName 脚本中的 "插件名:函数名"，见 PluginCallStatement.getQualifiedName
+     */
+    PluginFunction find(String qualifiedName, String functionName) throws Exception {
+        PluginFunction function = handlers.get(qualifiedName);
+        if (function != null) {
+            return function;
+        }
+        function = uniqueFunctions.get(functionName);
+        if (function != null) {
+            return function;
+        }
+        if (ambiguousFunctions.contains(functionName)) {
+            throw new Exception("插件函数 \"" + functionName + "\" 存在于多个插件中，需要指定插件ID。");
+        }
+        throw new Exception("插件 \"" + functionName + "\" 未找到或未加载。");
+    }
+
+    public int size() {
+        return handlers.size();
+    }
+
+    public List<String> getQualifiedNames() {
+        List<String> names = new ArrayList<>(handlers.keySet());
+        names.sort(null);
+        return names;
+    }
+}
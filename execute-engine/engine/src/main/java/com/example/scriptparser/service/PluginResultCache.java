@@ -0,0 +1,186 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.util.JsonNodeUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 纯函数插件（@Pure）的结果缓存。键为插件函数、插件jar的校验和、参数名和参数的 JsonNode，
+ * 哈希和比较都按节点结构进行，不做序列化。按条目数和估算的字节数限制大小，超出时按LRU淘汰。
+ * 键中带校验和，插件更新后旧版本的结果不会再命中，重载时再按插件ID删除。
+ * 缓存保存结果和参数的私有副本：put 时复制结果和键中的参数，get 时返回一份复制的结果，
+ * 插件和脚本修改拿到的节点不会影响缓存。
+ */
+public class PluginResultCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 访问顺序，头部是最久未使用的条目
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long weight;
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private record Entry(JsonNode result, long weight) {
+    }
+
+    private static class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+
+    static final class Key {
+        private final String pluginId;
+        private final String functionName;
+        private final String checksum;
+        private final List<String> names;
+        private final JsonNode[] arguments;
+        private final int hash;
+
+        Key(String pluginId, String functionName, String checksum, List<String> names, JsonNode[] arguments) {
+            this.pluginId = pluginId;
+            this.functionName = functionName;
+            this.checksum = checksum;
+            this.names = names;
+            this.arguments = arguments;
+            // JsonNode 的 hashCode 按子节点递归计算
+            int h = functionName.hashCode();
+            h = 31 * h + names.hashCode();
+            this.hash = 31 * h + Arrays.hashCode(arguments);
+        }
+
+        // 存入缓存的键，参数复制后不再引用执行上下文中的变量
+        Key copy() {
+            JsonNode[] copies = new JsonNode[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                copies[i] = arguments[i].deepCopy();
+            }
+            return new Key(pluginId, functionName, checksum, names, copies);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash
+                    && functionName.equals(other.functionName) && pluginId.equals(other.pluginId)
+                    && checksum.equals(other.checksum) && names.equals(other.names)
+                    && Arrays.equals(arguments, other.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public PluginResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    JsonNode get(Key key) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+        Counters c = counters(key.pluginId);
+        if (entry == null) {
+            c.misses.increment();
+            return null;
+        }
+        c.hits.increment();
+        return entry.result().deepCopy();
+    }
+
+    void put(Key key, JsonNode result) {
+        long entryWeight = JsonNodeUtil.estimateSize(result);
+        for (JsonNode argument : key.arguments) {
+            entryWeight += JsonNodeUtil.estimateSize(argument);
+        }
+        if (entryWeight > maxBytes) {
+            return;
+        }
+        Key stored = key.copy();
+        Entry entry = new Entry(result.deepCopy(), entryWeight);
+        lock.lock();
+        try {
+            Entry previous = entries.put(stored, entry);
+            if (previous != null) {
+                weight -= previous.weight();
+            }
+            weight += entryWeight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while ((weight > maxBytes || entries.size() > maxEntries) && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                weight -= evicted.weight();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 删除某个插件的全部缓存结果
+    public int invalidatePlugin(String pluginId) {
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> entry = it.next();
+                if (entry.getKey().pluginId.equals(pluginId)) {
+                    it.remove();
+                    weight -= entry.getValue().weight();
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        invalidations.add(removed);
+        return removed;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+            stats.put("maxEntries", maxEntries);
+            stats.put("weightBytes", weight);
+            stats.put("maxBytes", maxBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        Map<String, Object> plugins = new LinkedHashMap<>();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            long hits = entry.getValue().hits.sum();
+            long misses = entry.getValue().misses.sum();
+            plugins.put(entry.getKey(), Map.of("hits", hits, "misses", misses,
+                    "hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses)));
+        }
+        stats.put("plugins", plugins);
+        return stats;
+    }
+
+    private Counters counters(String pluginId) {
+        return counters.computeIfAbsent(pluginId, id -> new Counters());
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.util.HashUtil;
+import org.pf4j.PluginManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 管理插件的各代。重载时按内容校验和对比插件目录中的jar，只加载新增和内容变化的jar，
+ * 未变化的插件直接带入新的一代；新一代写时复制地发布为当前一代，
+ * 执行中的脚本继续使用已固定的旧一代，旧一代排空后在后台释放，不再被引用的插件随之卸载。
+ * 更新或移除的插件在纯函数结果缓存中的结果随重载删除。
+ */
+public class PluginService {
+
+    /**
+     * 一次重载的结果，列表中为插件ID，加载失败的为jar文件名和原因。
+     */
+    public record ReloadResult(List<String> added, List<String> changed, List<String> removed,
+                               List<String> failed, long elapsedMillis) {
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty() && failed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            if (isEmpty()) {
+                return "插件未变化";
+            }
+            return "新增插件 " + added + "，更新插件 " + changed + "，移除插件 " + removed
+                    + (failed.isEmpty() ? "" : "，加载失败 " + failed) + "，耗时 " + elapsedMillis + " 毫秒";
+        }
+    }
+
+    private final Path pluginsRoot;
+    private final Supplier<PluginManager> pluginManagerFactory;
+    // 按插件ID取得线程池隔离的配置，为 null 时不隔离
+    private final Function<String, PluginBulkhead.Settings> bulkheadSettings;
+    // 按插件ID保留，插件更新后沿用同一个线程池和统计；插件移除后，旧的一代退役完再关闭
+    private final Map<String, PluginBulkhead> bulkheads = new ConcurrentHashMap<>();
+    // 纯函数的结果缓存，为 null 时不缓存
+    private final PluginResultCache resultCache;
+    // 合并实现了批量调用的插件函数上的并发调用，为 null 时不合并
+    private final PluginBatcher batcher;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private volatile PluginGeneration current;
+    private long nextGeneration = 1;
+    // 已退役、还有执行固定在上面的各代
+    private final Set<PluginGeneration> draining = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder pluginLoads = new LongAdder();
+    private volatile ReloadResult lastReload;
+
+    /**
+     * @param pluginManagerFactory 每个jar使用单独创建的 PluginManager
+     * @param bulkheadSettings     按插件ID取得线程池隔离的配置，为 null 时插件在调用线程上执行
+     * @param resultCache          纯函数的结果缓存，为 null 时不缓存
+     * @param batcher              合并并发的调用，为 null 时不合并
+     */
+    public PluginService(Path pluginsRoot, Supplier<PluginManager> pluginManagerFactory,
+                         Function<String, PluginBulkhead.Settings> bulkheadSettings, PluginResultCache resultCache,
+                         PluginBatcher batcher) {
+        this.pluginsRoot = pluginsRoot;
+        this.pluginManagerFactory = pluginManagerFactory;
+        this.bulkheadSettings = bulkheadSettings;
+        this.resultCache = resultCache;
+        this.batcher = batcher;
+        this.current = new PluginGeneration(0, List.of(), this::function);
+        reload();
+    }
+
+    /**
+     * 固定当前的一代，调用方用完后必须 release。
+     */
+    public PluginGeneration acquire() {
+        while (true) {
+            PluginGeneration generation = current;
+            if (generation.tryAcquire()) {
+                return generation;
+            }
+        }
+    }
+
+    public PluginGeneration getCurrent() {
+        return current;
+    }
+
+    /**
+     * 只重新加载内容变化、新增或已删除的jar；没有变化时不产生新的一代。
+     */
+    public ReloadResult reload() {
+        reloadLock.lock();
+        try {
+            long start = System.nanoTime();
+            PluginGeneration previous = current;
+            Map<Path, LoadedPlugin> existing = new HashMap<>();
+            for (LoadedPlugin plugin : previous.getPlugins()) {
+                existing.put(plugin.getJar(), plugin);
+            }
+
+            List<LoadedPlugin> plugins = new ArrayList<>();
+            List<String> added = new ArrayList<>();
+            List<String> changed = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            for (Path jar : listJars()) {
+                LoadedPlugin old = existing.remove(jar);
+                String checksum;
+                try {
+                    checksum = HashUtil.sha256(jar);
+                } catch (IOException e) {
+                    failed.add(jar.getFileName() + ": " + e.getMessage());
+                    keep(old, plugins);
+                    continue;
+                }
+                if (old != null && old.getChecksum().equals(checksum)) {
+                    keep(old, plugins);
+                    continue;
+                }
+                try {
+                    LoadedPlugin loaded = LoadedPlugin.load(pluginManagerFactory.get(), jar, checksum);
+                    pluginLoads.increment();
+                    plugins.add(loaded);
+                    (old == null ? added : changed).add(loaded.getPluginId());
+                } catch (Exception e) {
+                    // 新版本加载失败时继续使用旧版本
+                    failed.add(jar.getFileName() + ": " + e.getMessage());
+                    keep(old, plugins);
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (LoadedPlugin plugin : existing.values()) {
+                removed.add(plugin.getPluginId());
+            }
+
+            ReloadResult result = new ReloadResult(added, changed, removed, failed,
+                    (System.nanoTime() - start) / 1_000_000);
+            if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+                // 没有产生新的一代，撤销对保留插件的引用
+                for (LoadedPlugin plugin : plugins) {
+                    plugin.release();
+                }
+            } else {
+                publish(previous, new PluginGeneration(nextGeneration++, plugins, this::function), removed);
+                invalidateResults(changed);
+                invalidateResults(removed);
+            }
+            lastReload = result;
+            System.out.println(result);
+            return result;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private PluginFunction function(LoadedPlugin plugin, PluginHandler handler) {
+        return new PluginFunction(plugin.getPluginId(), handler.getName(), handler, plugin, bulkhead(plugin.getPluginId()),
+                handler.isPure() ? resultCache : null, handler.isBatched() ? batcher : null);
+    }
+
+    private PluginBulkhead bulkhead(String pluginId) {
+        if (bulkheadSettings == null) {
+            return null;
+        }
+        return bulkheads.computeIfAbsent(pluginId, id -> new PluginBulkhead(id, bulkheadSettings.apply(id)));
+    }
+
+    private void invalidateResults(List<String> pluginIds) {
+        if (resultCache != null) {
+            for (String pluginId : pluginIds) {
+                resultCache.invalidatePlugin(pluginId);
+            }
+        }
+    }
+
+    private static void keep(LoadedPlugin plugin, List<LoadedPlugin> plugins) {
+        if (plugin != null) {
+            plugin.retain();
+            plugins.add(plugin);
+        }
+    }
+
+    private void publish(PluginGeneration previous, PluginGeneration loaded, List<String> removed) {
+        current = loaded;
+        reloads.increment();
+        for (String name : loaded.getRegistry().getQualifiedNames()) {
+            System.out.println("启动插件: " + name + " (第" + loaded.getNumber() + "代)");
+        }
+        List<PluginBulkhead> retired = retireBulkheads(loaded, removed);
+        draining.add(previous);
+        previous.retire(() -> CompletableFuture.runAsync(() -> {
+            previous.unload();
+            for (PluginBulkhead bulkhead : retired) {
+                bulkhead.retire();
+            }
+            draining.remove(previous);
+        }));
+    }
+
+    // 从表中移除已删除插件的线程池，之后同ID的插件重新加入时使用新的线程池。
+    // 旧的一代上还在执行的调用继续使用原来的线程池，等旧的一代退役后再关闭
+    private List<PluginBulkhead> retireBulkheads(PluginGeneration loaded, List<String> removed) {
+        List<PluginBulkhead> retired = new ArrayList<>();
+        for (String pluginId : removed) {
+            boolean stillLoaded = loaded.getPlugins().stream()
+                    .anyMatch(plugin -> plugin.getPluginId().equals(pluginId));
+            PluginBulkhead bulkhead = stillLoaded ? null : bulkheads.remove(pluginId);
+            if (bulkhead != null) {
+                retired.add(bulkhead);
+            }
+        }
+        return retired;
+    }
+
+    private List<Path> listJars() {
+        if (!Files.isDirectory(pluginsRoot)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(pluginsRoot)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            System.err.println("无法读取插件目录 " + pluginsRoot + ": " + e.getMessage());
+            return current.getPlugins().stream().map(LoadedPlugin::getJar).toList();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        PluginGeneration generation = current;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("generation", generation.getNumber());
+        stats.put("active", generation.getActive());
+        stats.put("plugins", generation.getPlugins().size());
+        stats.put("handlers", generation.getRegistry().size());
+        stats.put("functions", generation.getRegistry().getQualifiedNames());
+        stats.put("reloads", reloads.sum());
+        stats.put("pluginLoads", pluginLoads.sum());
+        ReloadResult last = lastReload;
+        stats.put("lastReload", last == null ? null : last.toString());
+        List<Map<String, Object>> drainingStats = new ArrayList<>();
+        for (PluginGeneration old : draining) {
+            drainingStats.add(Map.of("generation", old.getNumber(), "active", old.getActive()));
+        }
+        stats.put("draining", drainingStats);
+        Map<String, Object> bulkheadStats = new LinkedHashMap<>();
+        for (Map.Entry<String, PluginBulkhead> entry : bulkheads.entrySet()) {
+            bulkheadStats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        stats.put("bulkheads", bulkheadStats);
+        if (resultCache != null) {
+            stats.put("resultCache", resultCache.getStats());
+        }
+        if (batcher != null) {
+            stats.put("batching", batcher.getStats());
+        }
+        return stats;
+    }
+
+    public void close() {
+        for (PluginBulkhead bulkhead : bulkheads.values()) {
+            bulkhead.shutdown();
+        }
+    }
+}
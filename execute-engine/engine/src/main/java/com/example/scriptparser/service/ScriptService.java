@@ -1,29 +1,134 @@
 package com.example.scriptparser.service;
 
+import com.example.scriptparser.ast.Statement;
+import com.example.scriptparser.interpreter.SlotResolver;
+import com.example.scriptparser.model.CompiledScript;
+import com.example.scriptparser.model.GqlSchema;
+import com.example.scriptparser.model.GqlTemplate;
+import com.example.scriptparser.parser.ScriptParseException;
+import com.example.scriptparser.parser.ScriptParser;
+import com.example.scriptparser.util.HashUtil;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class ScriptService {
 
-    private final Map<String, String> gqlpScripts = new ConcurrentHashMap<>();
-    private final Map<String, String> gqlpkQueries = new ConcurrentHashMap<>();
+    @Autowired
+    private ScriptParser scriptParser;
+
+    private final Map<String, CompiledScript> gqlpScripts = new ConcurrentHashMap<>();
+    private final Map<String, GqlTemplate> gqlpkQueries = new ConcurrentHashMap<>();
+    // 每次替换 gqlpk 模板后加一，依赖模板的缓存（如语句的依赖图）据此失效
+    private final AtomicLong gqlpkVersion = new AtomicLong();
+
+    private final LongAdder lookupHits = new LongAdder();
+    private final LongAdder lookupMisses = new LongAdder();
+    private final LongAdder compiles = new LongAdder();
+    private final LongAdder compileReuses = new LongAdder();
 
-    public void updateGqlpScripts(Map<String, String> newScripts) {
-        gqlpScripts.putAll(newScripts);
+    /**
+     * 上传时一次性解析全部脚本，任一脚本解析失败则整批不生效；
+     * 解析成功后按脚本名逐个替换，正在执行的请求继续使用旧的AST。
+     */
+    public void updateGqlpScripts(Map<String, String> newScripts) throws Exception {
+        Map<String, CompiledScript> compiled = new HashMap<>();
+        for (Map.Entry<String, String> entry : newScripts.entrySet()) {
+            compiled.put(entry.getKey(), compile(entry.getKey(), entry.getValue()));
+        }
+        gqlpScripts.putAll(compiled);
     }
 
-    public void updateGqlpkQueries(Map<String, String> newQueries) {
-        gqlpkQueries.putAll(newQueries);
+    public Set<String> updateGqlpkQueries(Map<String, String> newQueries) {
+        return updateGqlpkQueries(newQueries, null);
     }
 
-    public String getGqlpScript(String scriptName) {
-        return gqlpScripts.get(scriptName);
+    /**
+     * schema 不为 null 时把模板预编译为带变量的查询，无法推断占位符类型的模板按拼接方式执行。
+     * 返回本次更新的 gqlpk 键（不含选项）。
+     */
+    public Set<String> updateGqlpkQueries(Map<String, String> newQueries, GqlSchema schema) {
+        Set<String> updated = new HashSet<>();
+        for (Map.Entry<String, String> entry : newQueries.entrySet()) {
+            GqlTemplate template = GqlTemplate.fromDeclaration(entry.getKey(), entry.getValue());
+            if (template.getOptions().containsKey("batch") && !template.isReadOnly()) {
+                System.err.println("GraphQL Key " + template.getKey() + " is not a read-only query, ignoring the batch option");
+            }
+            if (schema != null) {
+                try {
+                    template = template.withDocument(GqlTemplateCompiler.compile(template.getText(), schema));
+                } catch (Exception e) {
+                    System.err.println("GraphQL Key " + template.getKey() + " will be spliced: " + e.getMessage());
+                }
+            }
+            gqlpkQueries.put(template.getKey(), template);
+            updated.add(template.getKey());
+        }
+        gqlpkVersion.incrementAndGet();
+        return updated;
     }
 
-    public String getGqlpkQuery(String graphqlKey) {
+    public CompiledScript getCompiledScript(String scriptName) {
+        CompiledScript script = gqlpScripts.get(scriptName);
+        if (script == null) {
+            lookupMisses.increment();
+        } else {
+            lookupHits.increment();
+        }
+        return script;
+    }
+
+    public GqlTemplate getGqlpkQuery(String graphqlKey) {
         return gqlpkQueries.get(graphqlKey);
     }
+
+    // 先读版本再读模板：读到的模板不会比版本旧
+    public long getGqlpkVersion() {
+        return gqlpkVersion.get();
+    }
+
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scripts", gqlpScripts.size());
+        stats.put("hits", lookupHits.sum());
+        stats.put("misses", lookupMisses.sum());
+        stats.put("compiles", compiles.sum());
+        stats.put("compileReuses", compileReuses.sum());
+        stats.put("gqlpkTemplates", gqlpkQueries.size());
+        stats.put("gqlpkCompiled", gqlpkQueries.values().stream().filter(t -> t.getDocument() != null).count());
+        return stats;
+    }
+
+    private CompiledScript compile(String scriptName, String content) throws Exception {
+        String contentHash = HashUtil.sha256(content);
+
+        // 内容未变化的脚本直接复用已有的AST
+        CompiledScript existing = gqlpScripts.get(scriptName);
+        if (existing != null && existing.getContentHash().equals(contentHash)) {
+            compileReuses.increment();
+            return existing;
+        }
+
+        compiles.increment();
+        List<Statement> statements = parse(scriptName, content);
+        return new CompiledScript(scriptName, contentHash, statements, SlotResolver.resolve(statements));
+    }
+
+    private List<Statement> parse(String scriptName, String content) throws Exception {
+        try {
+            return scriptParser.parse(content);
+        } catch (ScriptParseException e) {
+            throw new Exception("Script " + scriptName + ": " + e.getMessage(), e);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package com.example.scriptparser.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 合并同一时刻进行中的相同调用：第一个调用方执行，之后相同键的调用方等待同一个结果。
+ * 调用结束后立即移除，不缓存结果。有调用方被合并时，每个调用方拿到 copy 复制出的结果，
+ * 共享的结果不交给任何调用方；没有被合并的调用方直接拿到结果，不复制。
+ */
+public class InFlightCoalescer<K, V> {
+
+    private final Map<K, Call<V>> inFlight = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> copy;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    // 进行中的调用。followers 只在 inFlight 的 compute 中增加，移除之后不再变化
+    private static final class Call<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final AtomicInteger followers = new AtomicInteger();
+    }
+
+    /**
+     * 结果不可变或调用方不会修改时使用，不复制结果。
+     */
+    public InFlightCoalescer() {
+        this(UnaryOperator.identity());
+    }
+
+    public InFlightCoalescer(UnaryOperator<V> copy) {
+        this.copy = copy;
+    }
+
+    public V execute(K key, Callable<V> call) throws Exception {
+        Call<V> mine = new Call<>();
+        Call<V> existing = join(key, mine);
+        if (existing != null) {
+            collapsed.increment();
+            return copy.apply(await(existing.result));
+        }
+        calls.increment();
+        V result;
+        try {
+            result = call.call();
+        } catch (Throwable e) {
+            inFlight.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        // 先移除再发布结果，此后不会再有调用方加入
+        inFlight.remove(key, mine);
+        mine.result.complete(result);
+        return mine.followers.get() == 0 ? result : copy.apply(result);
+    }
+
+    /**
+     * 不阻塞的 execute：后到的调用方等待第一个调用方的结果，与 execute 的调用方互相合并。
+     * 每个调用方拿到自己的 future，取消它不影响其他调用方。
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        Call<V> mine = new Call<>();
+        Call<V> existing = join(key, mine);
+        if (existing != null) {
+            collapsed.increment();
+            return existing.result.thenApply(copy);
+        }
+        calls.increment();
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (Throwable e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<V> own = new CompletableFuture<>();
+        result.whenComplete((value, e) -> {
+            inFlight.remove(key, mine);
+            if (e == null) {
+                mine.result.complete(value);
+                own.complete(mine.followers.get() == 0 ? value : copy.apply(value));
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                mine.result.completeExceptionally(cause);
+                own.completeExceptionally(cause);
+            }
+        });
+        return own;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.sum());
+        stats.put("collapsed", collapsed.sum());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    // 键上没有进行中的调用时登记 mine 并返回 null，否则在同一个原子操作中登记为跟随者并返回进行中的调用
+    private Call<V> join(K key, Call<V> mine) {
+        Call<V> current = inFlight.compute(key, (k, call) -> {
+            if (call == null) {
+                return mine;
+            }
+            call.followers.incrementAndGet();
+            return call;
+        });
+        return current == mine ? null : current;
+    }
+
+    private static <V> V await(CompletableFuture<V> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+}
@@ -4,6 +4,12 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ValueNode;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 public class JsonNodeUtil {
 
     private static final JsonNodeFactory factory = JsonNodeFactory.instance;
@@ -31,4 +37,63 @@ public class JsonNodeUtil {
     public static JsonNode createDefaultJsonNode() {
         return factory.nullNode();
     }
+
+    // 对象字段按名字排序的JSON文本，内容相同的节点得到相同的字符串
+    public static String canonicalString(JsonNode node) {
+        StringBuilder sb = new StringBuilder();
+        appendCanonical(node, sb);
+        return sb.toString();
+    }
+
+    // 估算节点占用的堆内字节数，不做序列化
+    public static long estimateSize(JsonNode node) {
+        if (node.isTextual()) {
+            return 40 + 2L * node.textValue().length();
+        }
+        if (node.isObject()) {
+            long total = 48;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                total += 32 + 2L * field.getKey().length() + estimateSize(field.getValue());
+            }
+            return total;
+        }
+        if (node.isArray()) {
+            long total = 32;
+            for (JsonNode element : node) {
+                total += 8 + estimateSize(element);
+            }
+            return total;
+        }
+        return 16;
+    }
+
+    private static void appendCanonical(JsonNode node, StringBuilder sb) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            node.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            sb.append('{');
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(factory.textNode(names.get(i))).append(':');
+                appendCanonical(node.get(names.get(i)), sb);
+            }
+            sb.append('}');
+        } else if (node.isArray()) {
+            sb.append('[');
+            for (int i = 0; i < node.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendCanonical(node.get(i), sb);
+            }
+            sb.append(']');
+        } else {
+            sb.append(node);
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package com.example.scriptparser.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按键聚合并发调用的微批处理器。同一个键上第一个到达的调用成为本批的发起者，
+ * 等待一个时间窗口或批次满后在自己的线程上执行批处理函数，其余调用阻塞等待各自的结果。
+ * 同一个键上没有其他调用在进行时直接执行，空闲时不引入额外等待。
+ * 用 ReentrantLock 而不是 synchronized，避免虚拟线程在等待时被固定。
+ */
+public class KeyedBatcher<K, T, R> {
+
+    public interface BatchFunction<K, T, R> {
+        // 返回与 items 一一对应的结果
+        List<R> apply(K key, List<T> items) throws Exception;
+    }
+
+    private final BatchFunction<K, T, R> function;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, Batch<T, R>> pending = new ConcurrentHashMap<>();
+    private final Map<K, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    private final LongAdder directCalls = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedCalls = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    public KeyedBatcher(BatchFunction<K, T, R> function) {
+        this.function = function;
+    }
+
+    /**
+     * @param windowNanos 发起者最多等待的时间
+     * @param maxSize     批次达到该大小时立即执行
+     */
+    public R execute(K key, T item, long windowNanos, int maxSize) throws Exception {
+        // 计数的增减都在 compute 中进行，归零时移除，与新到的调用不会互相错过
+        AtomicInteger activeCalls = active.compute(key, (k, calls) -> {
+            AtomicInteger counter = calls == null ? new AtomicInteger() : calls;
+            counter.incrementAndGet();
+            return counter;
+        });
+        try {
+            Batch<T, R> batch;
+            CompletableFuture<R> result = null;
+            boolean leader = false;
+            lock.lock();
+            try {
+                batch = pending.get(key);
+                if (batch == null && activeCalls.get() > 1 && maxSize > 1) {
+                    batch = new Batch<>(lock.newCondition());
+                    pending.put(key, batch);
+                    leader = true;
+                }
+                if (batch != null) {
+                    result = batch.add(item);
+                    if (batch.items.size() >= maxSize) {
+                        close(key, batch);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (batch == null) {
+                directCalls.increment();
+                return function.apply(key, List.of(item)).get(0);
+            }
+            if (leader) {
+                long start = System.nanoTime();
+                lock.lock();
+                try {
+                    long remaining = windowNanos;
+                    while (!batch.closed && remaining > 0) {
+                        remaining = batch.full.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // 被中断时提前发出本批，保证等待中的调用都能拿到结果
+                    Thread.currentThread().interrupt();
+                } finally {
+                    close(key, batch);
+                    lock.unlock();
+                }
+                recordWait(System.nanoTime() - start);
+                run(key, batch);
+            }
+            return await(result);
+        } finally {
+            active.computeIfPresent(key, (k, calls) -> calls.decrementAndGet() == 0 ? null : calls);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.sum();
+        stats.put("directCalls", directCalls.sum());
+        stats.put("batches", batchCount);
+        stats.put("batchedCalls", batchedCalls.sum());
+        stats.put("avgBatchSize", batchCount == 0 ? 0 : (double) batchedCalls.sum() / batchCount);
+        stats.put("maxBatchSize", maxBatchSize.get());
+        stats.put("avgWaitMillis", batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / batchCount) / 1000.0);
+        stats.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()) / 1000.0);
+        stats.put("activeKeys", active.size());
+        return stats;
+    }
+
+    // 调用方需持有锁
+    private void close(K key, Batch<T, R> batch) {
+        if (!batch.closed) {
+            batch.closed = true;
+            pending.remove(key, batch);
+            batch.full.signal();
+        }
+    }
+
+    private void run(K key, Batch<T, R> batch) {
+        batches.increment();
+        batchedCalls.add(batch.items.size());
+        maxBatchSize.accumulate(batch.items.size());
+        try {
+            List<R> results = function.apply(key, batch.items);
+            for (int i = 0; i < batch.results.size(); i++) {
+                batch.results.get(i).complete(results.get(i));
+            }
+        } catch (Throwable e) {
+            for (CompletableFuture<R> result : batch.results) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulate(nanos);
+    }
+
+    private static <R> R await(CompletableFuture<R> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Batch<T, R> {
+        private final Condition full;
+        private final List<T> items = new ArrayList<>();
+        private final List<CompletableFuture<R>> results = new ArrayList<>();
+        private boolean closed;
+
+        Batch(Condition full) {
+            this.full = full;
+        }
+
+        CompletableFuture<R> add(T item) {
+            CompletableFuture<R> result = new CompletableFuture<>();
+            items.add(item);
+            results.add(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.scriptparser.parser;
+
+import java.util.Random;
+
+/**
+ * 生成语法合法的GraphQL+脚本，覆盖全部语句类型、注释以及嵌套的 if/while 块。
+ */
+class ScriptGenerator {
+
+    private final Random random;
+    private int counter = 0;
+
+    ScriptGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    String generate(int statementCount) {
+        StringBuilder sb = new StringBuilder();
+        int remaining = statementCount;
+        while (remaining > 0) {
+            remaining -= appendStatement(sb, 0, remaining);
+        }
+        return sb.toString();
+    }
+
+    private int appendStatement(StringBuilder sb, int depth, int budget) {
+        String indent = "    ".repeat(depth);
+        int id = counter++;
+        int kind = random.nextInt(depth < 2 && budget > 3 ? 10 : 8);
+        String end = random.nextBoolean() ? ";\n" : "\n";
+        switch (kind) {
+            case 0 -> sb.append(indent).append("new trip").append(id).append(" = gql query {getTripByTripId").append(id).append('}').append(end);
+            case 1 -> sb.append(indent).append("output travel2.trip").append(id).append(" = trip").append(id).append(end);
+            case 2 -> sb.append(indent).append("new type").append(id).append(" = train").append(id % 3).append(".jar/api").append(id % 5)
+                    .append("(travel2.trip").append(id).append(random.nextBoolean() ? ", station" + id : "").append(')').append(end);
+            case 3 -> sb.append(indent).append("def flag").append(id).append(" = ").append(randomValue()).append(end);
+            case 4 -> sb.append(indent).append("set flag").append(id).append(" = ").append(randomValue()).append(end);
+            case 5 -> sb.append(indent).append("int i").append(id).append(" = ").append(random.nextInt(2000) - 1000).append(end);
+            case 6 -> sb.append(indent).append("cal i").append(id).append(" = i").append(id).append(random.nextBoolean() ? " + " : " - ")
+                    .append(random.nextInt(100)).append(end);
+            case 7 -> sb.append(indent).append("# comment ").append(id).append('\n')
+                    .append(indent).append("new q").append(id).append(" = gql query {\n")
+                    .append(indent).append("    nested").append(id).append(" { field }\n")
+                    .append(indent).append('}').append(end);
+            default -> {
+                sb.append(indent).append(kind == 8 ? "if" : "while").append("(cond").append(id).append("){\n");
+                int used = 1;
+                int inner = 1 + random.nextInt(Math.min(4, budget - 1));
+                while (inner > 0) {
+                    int n = appendStatement(sb, depth + 1, inner);
+                    inner -= n;
+                    used += n;
+                }
+                sb.append(indent).append('}').append(end);
+                return used;
+            }
+        }
+        return 1;
+    }
+
+    private String randomValue() {
+        return switch (random.nextInt(4)) {
+            case 0 -> random.nextBoolean() ? "true" : "false";
+            case 1 -> Integer.toString(random.nextInt(1000) - 500);
+            case 2 -> (random.nextBoolean() ? "-" : "") + random.nextInt(100) + "." + random.nextInt(100);
+            default -> "." + random.nextInt(1000);
+        };
+    }
+}
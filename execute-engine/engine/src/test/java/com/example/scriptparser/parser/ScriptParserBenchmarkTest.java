@@ -0,0 +1,43 @@
+package com.example.scriptparser.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 对比两种解析器在10~10000条语句脚本上的耗时与分配量。
+ * 运行: mvn test -Dtest=ScriptParserBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ScriptParserBenchmarkTest {
+
+    private static final int[] SIZES = {10, 100, 1000, 10000};
+
+    @Test
+    void compareParsers() throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ScriptParser[] parsers = {new ParboiledScriptParser(), new RecursiveDescentScriptParser()};
+
+        System.out.printf("%-32s %8s %14s %16s%n", "parser", "stmts", "us/parse", "bytes/parse");
+        for (int size : SIZES) {
+            String script = new ScriptGenerator(size).generate(size);
+            int iterations = Math.max(5, 20000 / size);
+            for (ScriptParser parser : parsers) {
+                for (int i = 0; i < iterations; i++) {
+                    parser.parse(script);
+                }
+                long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    parser.parse(script);
+                }
+                long elapsed = System.nanoTime() - start;
+                long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                System.out.printf("%-32s %8d %14.1f %16d%n", parser.getClass().getSimpleName(), size,
+                        elapsed / 1000.0 / iterations, allocated / iterations);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.scriptparser.parser;
+
+import com.example.scriptparser.ast.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScriptParserDifferentialTest {
+
+    private final ScriptParser parboiled = new ParboiledScriptParser();
+    private final ScriptParser recursiveDescent = new RecursiveDescentScriptParser();
+
+    @Test
+    void sameAstForExampleScripts() throws Exception {
+        String[] scripts = {
+                "new trip123 = gql query {getTripByTripId};\n"
+                        + "output travel2.trip = trip123;\n"
+                        + "def train123456 = true;\n"
+                        + "if(train123456){\n"
+                        + "    new trainTypeName123_if1 = train0.so/trainapi1(travel2.trip_if1);\n"
+                        + "    new trainType123_if1 = gql query {getTrainTypeByName_if1};\n"
+                        + "    output train.trainType_if1 = trainType123_if1;\n"
+                        + "};\n",
+                "# header\nint i = 3\nwhile (i) { cal i = i - 1; set f = -.5; def g = 2.; def h = -7 }\n",
+                "new x = a.b/f()\nnew y = p/f(a, b.c ,d)\nnew z = gql query { q { nested { x } } } # trailing\n",
+                "new x = gqlx/f(a)",
+                "cal a = b -1; cal c = d - -2",
+                "",
+        };
+        for (String script : scripts) {
+            assertSameAst(script);
+        }
+    }
+
+    @Test
+    void sameAstForGeneratedScripts() throws Exception {
+        for (int seed = 0; seed < 50; seed++) {
+            assertSameAst(new ScriptGenerator(seed).generate(1 + seed * 7));
+        }
+    }
+
+    @Test
+    void bothRejectInvalidScripts() {
+        String[] scripts = {
+                "def a = ",
+                "new x = gql query {unbalanced",
+                "output new.x = y",
+                "if (x) { def a = 1",
+                "new x = p/f(a,)",
+                "a;;",
+        };
+        for (String script : scripts) {
+            assertThrows(ScriptParseException.class, () -> parboiled.parse(script), script);
+            assertThrows(ScriptParseException.class, () -> recursiveDescent.parse(script), script);
+        }
+    }
+
+    @Test
+    void reportsLineAndColumn() {
+        ScriptParseException e = assertThrows(ScriptParseException.class,
+                () -> recursiveDescent.parse("def a = true\ndef b = "));
+        assertEquals(2, e.getLine());
+        assertEquals(9, e.getColumn());
+    }
+
+    private void assertSameAst(String script) throws Exception {
+        assertEquals(dump(parboiled.parse(script)), dump(recursiveDescent.parse(script)), script);
+    }
+
+    private static String dump(List<Statement> statements) {
+        StringBuilder sb = new StringBuilder();
+        dump(statements, sb);
+        return sb.toString();
+    }
+
+    private static void dump(List<Statement> statements, StringBuilder sb) {
+        for (Statement stmt : statements) {
+            sb.append(stmt);
+            if (stmt instanceof DefStatement def) {
+                sb.append(':').append(def.getValue().getValue().getClass().getSimpleName());
+            } else if (stmt instanceof SetStatement set) {
+                sb.append(':').append(set.getValue().getValue().getClass().getSimpleName());
+            } else if (stmt instanceof IfStatement ifStmt) {
+                sb.append('[');
+                dump(ifStmt.getTrueBlock().getStatements(), sb);
+                sb.append(']');
+            } else if (stmt instanceof WhileStatement whileStmt) {
+                sb.append('[');
+                dump(whileStmt.getLoopBlock().getStatements(), sb);
+                sb.append(']');
+            }
+            sb.append('\n');
+        }
+    }
+}
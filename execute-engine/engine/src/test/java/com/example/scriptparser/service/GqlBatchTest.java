@@ -0,0 +1,112 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.GqlTemplate;
+import com.example.scriptparser.parser.RecursiveDescentScriptParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GqlBatchTest {
+
+    private static final int CALLERS = 8;
+
+    private StubGraphQLGateway gateway;
+    private ScriptService scriptService;
+    private ExecutionService executionService;
+    private GatewayClient gatewayClient;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        gateway = new StubGraphQLGateway();
+        String endpoint = gateway.start();
+        // 第一个请求在途时其余调用方都已到达，会聚成一批
+        gateway.setLatencyMillis(300);
+
+        scriptService = new ScriptService();
+        ReflectionTestUtils.setField(scriptService, "scriptParser", new RecursiveDescentScriptParser());
+        scriptService.updateGqlpScripts(Map.of(
+                "read", "new trip = gql query {getTrip}\noutput result.trip = trip\n",
+                "write", "new trip = gql query {bookTrip}\noutput result.trip = trip\n"));
+        scriptService.updateGqlpkQueries(Map.of(
+                "getTrip;batch", "query { trip(id: ${tripId}) { id } }",
+                "bookTrip;batch", "mutation { trip(id: ${tripId}) { id } }"));
+
+        executionService = new ExecutionService();
+        ReflectionTestUtils.setField(executionService, "scriptService", scriptService);
+        gatewayClient = new GatewayClient(GatewayClient.Settings.defaults(endpoint));
+        ReflectionTestUtils.setField(executionService, "gatewayClient", gatewayClient);
+        ReflectionTestUtils.setField(executionService, "executionMode", "sequential");
+        ReflectionTestUtils.setField(executionService, "gqlBatchEnabled", true);
+        ReflectionTestUtils.setField(executionService, "gqlBatchWindowMillis", 100L);
+        ReflectionTestUtils.setField(executionService, "gqlBatchMaxSize", CALLERS - 1);
+        callers = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        gatewayClient.close();
+        gateway.stop();
+    }
+
+    @Test
+    void batchOptionIsIgnoredOnMutations() {
+        assertTrue(scriptService.getGqlpkQuery("getTrip").isBatched());
+        assertFalse(scriptService.getGqlpkQuery("bookTrip").isBatched());
+        assertFalse(GqlTemplate.fromDeclaration("createOrder;batch", "mutation { createOrder { id } }").isBatched());
+    }
+
+    @Test
+    void identicalMutationsAreAllSent() throws Exception {
+        int before = gateway.getRequests();
+        List<JsonNode> results = executeConcurrently("write");
+
+        // 每个调用方的 mutation 都发送到网关，不会因为变量相同而只执行一次
+        assertEquals(CALLERS, gateway.getRequests() - before);
+        for (JsonNode result : results) {
+            assertEquals("T1", result.path("id").asText());
+        }
+    }
+
+    @Test
+    void identicalQueriesAreSentOnce() throws Exception {
+        int before = gateway.getRequests();
+        List<JsonNode> results = executeConcurrently("read");
+
+        // 第一个调用直接发送，其余相同的查询在一个批次中只发送一次
+        assertEquals(2, gateway.getRequests() - before);
+        for (JsonNode result : results) {
+            assertEquals("T1", result.path("id").asText());
+        }
+    }
+
+    private List<JsonNode> executeConcurrently(String script) throws Exception {
+        List<Future<JsonNode>> futures = new ArrayList<>();
+        futures.add(callers.submit(() -> executionService.executeScript(script, Map.of("tripId", "T1"))));
+        // 等第一个调用的请求发出后再提交其余调用
+        Thread.sleep(100);
+        for (int i = 1; i < CALLERS; i++) {
+            futures.add(callers.submit(() -> executionService.executeScript(script, Map.of("tripId", "T1"))));
+        }
+        List<JsonNode> results = new ArrayList<>();
+        for (Future<JsonNode> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS).path("trip"));
+        }
+        return results;
+    }
+}
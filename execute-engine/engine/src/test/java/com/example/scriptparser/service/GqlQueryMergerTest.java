@@ -0,0 +1,139 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.GqlRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GqlQueryMergerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void nestedSelectionsAndArgumentsAreCopiedUnderPrefixedAliases() {
+        GqlQueryMerger.Merged merged = merge(
+                new GqlRequest("{ trip(id: \"T1\") { id stops(first: 2) { name } } }"),
+                new GqlRequest("query Food { t: food(filter: {kind: \"hot\", ids: [1, 2]}) { name } }"));
+
+        assertEquals("query {\n"
+                + "  s0_trip: trip(id: \"T1\") { id stops(first: 2) { name } }\n"
+                + "  s1_t: food(filter: {kind: \"hot\", ids: [1, 2]}) { name }\n"
+                + "}", merged.getDocument());
+        assertNull(merged.getVariables());
+    }
+
+    @Test
+    void bracesAndDollarsInsideStringsAreNotSyntax() {
+        GqlQueryMerger.Merged merged = merge(
+                new GqlRequest("query($q: String) { search(text: \"a { b } $c\", q: $q) { id } }", variables("q", "x"), "h1"),
+                new GqlRequest("{ note(text: \"\"\"}\n$d {\"\"\") }"));
+
+        assertEquals("query($s0_q: String) {\n"
+                + "  s0_search: search(text: \"a { b } $c\", q: $s0_q) { id }\n"
+                + "  s1_note: note(text: \"\"\"}\n$d {\"\"\")\n"
+                + "}", merged.getDocument());
+        assertEquals(variables("s0_q", "x"), merged.getVariables());
+    }
+
+    @Test
+    void sameVariableNamesInDifferentPartsDoNotCollide() {
+        String query = "query($id: ID!, $n: Int = 10) { trip(id: $id) { seats(first: $n) } }";
+        GqlQueryMerger.Merged merged = merge(
+                new GqlRequest(query, variables("id", "A"), "h"),
+                new GqlRequest(query, variables("id", "B"), "h"));
+
+        assertEquals("query($s0_id: ID!, $s0_n: Int = 10, $s1_id: ID!, $s1_n: Int = 10) {\n"
+                + "  s0_trip: trip(id: $s0_id) { seats(first: $s0_n) }\n"
+                + "  s1_trip: trip(id: $s1_id) { seats(first: $s1_n) }\n"
+                + "}", merged.getDocument());
+        ObjectNode expected = variables("s0_id", "A");
+        expected.put("s1_id", "B");
+        assertEquals(expected, merged.getVariables());
+        assertTrue(merged.isFixedText());
+    }
+
+    @Test
+    void fieldDirectivesAndSharedFragmentsAreKept() {
+        String fragment = "fragment T on Trip { id name }";
+        GqlQueryMerger.Merged merged = merge(
+                new GqlRequest("query($x: Boolean) { a @include(if: $x) { ...T } } " + fragment, variables("x", true), "h"),
+                new GqlRequest("{ b { ...T } } " + fragment));
+
+        assertEquals("query($s0_x: Boolean) {\n"
+                + "  s0_a: a @include(if: $s0_x) { ...T }\n"
+                + "  s1_b: b { ...T }\n"
+                + "}\n" + fragment, merged.getDocument());
+    }
+
+    @Test
+    void documentsThatCannotBeRenamedFallBack() {
+        // 操作指令、顶层片段展开、引用变量的片段、mutation 和多个操作都单独发送
+        assertNull(parse("query @cached { a }"));
+        assertNull(parse("{ ...F } fragment F on Query { a }"));
+        assertNull(parse("query($x: ID) { a { ...F } } fragment F on A { b(id: $x) }"));
+        assertNull(parse("mutation { a }"));
+        assertNull(parse("{ a } { b }"));
+        assertNull(parse("{ a(id: \"unterminated) }"));
+
+        // 同名片段定义不同时无法合并
+        List<GqlQueryMerger.Part> parts = new ArrayList<>();
+        parts.add(parse("{ a { ...F } } fragment F on A { x }"));
+        parts.add(parse("{ b { ...F } } fragment F on A { y }"));
+        assertNull(GqlQueryMerger.merge(parts));
+    }
+
+    @Test
+    void dataAndErrorsAreSplitBackByAlias() throws Exception {
+        GqlQueryMerger.Merged merged = merge(
+                new GqlRequest("{ trip { id } }"),
+                new GqlRequest("{ t: food { name } }"));
+        JsonNode response = objectMapper.readTree("{\"data\":{\"s0_trip\":{\"id\":\"T1\"},\"s1_t\":null},"
+                + "\"errors\":[{\"message\":\"no food\",\"path\":[\"s1_t\",\"name\"]},"
+                + "{\"message\":\"bad document\"},"
+                + "{\"message\":\"unknown\",\"path\":[\"other\"]}]}");
+
+        JsonNode[] data = merged.splitData(response);
+        assertEquals(objectMapper.readTree("{\"trip\":{\"id\":\"T1\"}}"), data[0]);
+        assertEquals(objectMapper.readTree("{\"t\":null}"), data[1]);
+
+        List<List<JsonNode>> errors = merged.splitErrors(response);
+        assertEquals(3, errors.size());
+        assertTrue(errors.get(0).isEmpty());
+        assertEquals(1, errors.get(1).size());
+        assertEquals(objectMapper.readTree("[\"t\",\"name\"]"), errors.get(1).get(0).get("path"));
+        // 没有 path 或 path 不属于任何查询的错误无法归属
+        assertEquals(2, errors.get(2).size());
+        assertEquals("bad document", errors.get(2).get(0).path("message").asText());
+    }
+
+    private GqlQueryMerger.Part parse(String query) {
+        return GqlQueryMerger.parse(new GqlRequest(query));
+    }
+
+    private GqlQueryMerger.Merged merge(GqlRequest... requests) {
+        List<GqlQueryMerger.Part> parts = new ArrayList<>();
+        for (GqlRequest request : requests) {
+            GqlQueryMerger.Part part = GqlQueryMerger.parse(request);
+            assertNotNull(part, request.query());
+            parts.add(part);
+        }
+        GqlQueryMerger.Merged merged = GqlQueryMerger.merge(parts);
+        assertNotNull(merged);
+        return merged;
+    }
+
+    private ObjectNode variables(String name, Object value) {
+        ObjectNode variables = objectMapper.createObjectNode();
+        variables.set(name, objectMapper.valueToTree(value));
+        return variables;
+    }
+}
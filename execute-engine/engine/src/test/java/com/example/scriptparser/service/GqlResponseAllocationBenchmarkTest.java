@@ -0,0 +1,92 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 对比读取网关响应时每条查询的分配字节数：原来先把响应体读成 String 再 readTree，
+ * 现在由 GqlResponseReader 按到达的字节块增量解析，只构建 data 和 errors。
+ * 响应模拟带食品列表的车站数据，约数MB，并带一段调用方不使用的 extensions。
+ * 运行: mvn test -Dtest=GqlResponseAllocationBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class GqlResponseAllocationBenchmarkTest {
+
+    private static final int STATIONS = 2000;
+    private static final int FOODS_PER_STATION = 20;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+    // 与 I/O 线程每次读到的数据量相当
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void compareAllocations() throws Exception {
+        byte[] body = objectMapper.writeValueAsBytes(response());
+
+        long buffered = allocatedPerQuery(body, false);
+        long streaming = allocatedPerQuery(body, true);
+        System.out.printf("response: %d KB, String + readTree: %d KB/query, streaming: %d KB/query%n",
+                body.length / 1024, buffered / 1024, streaming / 1024);
+    }
+
+    private long allocatedPerQuery(byte[] body, boolean streaming) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            read(body, streaming);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        JsonNode data = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            data = read(body, streaming).get("data");
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(STATIONS, data.path("stations").size());
+        return allocated / ITERATIONS;
+    }
+
+    private JsonNode read(byte[] body, boolean streaming) throws Exception {
+        if (streaming) {
+            try (GqlResponseReader reader = new GqlResponseReader(objectMapper)) {
+                for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+                    reader.feed(ByteBuffer.wrap(body, offset, Math.min(CHUNK_SIZE, body.length - offset)));
+                }
+                return reader.finish();
+            }
+        }
+        // 与 StringHttpMessageConverter 相同，先把整个响应体读成 String
+        String text = new String(body, StandardCharsets.UTF_8);
+        return objectMapper.readTree(text);
+    }
+
+    private ObjectNode response() {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode stations = response.putObject("data").putArray("stations");
+        for (int i = 0; i < STATIONS; i++) {
+            ObjectNode station = stations.addObject();
+            station.put("id", "station-" + i);
+            station.put("name", "Station " + i);
+            ArrayNode foods = station.putArray("foodList");
+            for (int j = 0; j < FOODS_PER_STATION; j++) {
+                foods.addObject().put("foodName", "food-" + i + "-" + j).put("price", 10.5 + j);
+            }
+        }
+        ArrayNode tracing = response.putObject("extensions").putObject("tracing").putArray("resolvers");
+        for (int i = 0; i < STATIONS; i++) {
+            tracing.addObject().put("path", "stations." + i).put("duration", 1000 + i);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GqlResponseReaderTest {
+
+    // extensions 在 data 前后各出现一次，字符串中的多字节字符会被切在两块之间
+    private static final String RESPONSE = "{\"extensions\":{\"tracing\":[{\"path\":[\"trip\"],\"ok\":true}]},"
+            + "\"data\":{\"trip\":{\"id\":\"G1234\",\"startStationName\":\"上海虹桥\",\"seats\":[1,2147483648,"
+            + "123456789012345678901234567890],\"price\":123.45,\"sold\":false,\"note\":null,\"stops\":[[],{}]}},"
+            + "\"errors\":[{\"message\":\"余票不足\",\"path\":[\"trip\",\"seats\"]}],"
+            + "\"extensions2\":\"skipped\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void buildsTheSameTreeAsReadTreeForAnyChunking() throws Exception {
+        byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        JsonNode full = objectMapper.readTree(body);
+        ObjectNode expected = objectMapper.createObjectNode();
+        expected.set("data", full.get("data"));
+        expected.set("errors", full.get("errors"));
+
+        for (int chunkSize = 1; chunkSize <= body.length; chunkSize++) {
+            assertEquals(expected, read(body, chunkSize), "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    void skipsFieldsOtherThanDataAndErrors() throws Exception {
+        ObjectNode response = read(RESPONSE.getBytes(StandardCharsets.UTF_8), 7);
+        assertEquals(2, response.size());
+        assertFalse(response.has("extensions"));
+        assertEquals("上海虹桥", response.path("data").path("trip").path("startStationName").asText());
+    }
+
+    @Test
+    void rejectsIncompleteOrInvalidResponses() {
+        byte[] truncated = RESPONSE.substring(0, RESPONSE.length() / 2).getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> read(truncated, 16));
+        assertThrows(IOException.class, () -> read("[1,2]".getBytes(StandardCharsets.UTF_8), 16));
+        assertThrows(IOException.class, () -> read("{\"data\":{} }{}".getBytes(StandardCharsets.UTF_8), 16));
+    }
+
+    // 与 GqlResponseConsumer 相同，复用同一个缓冲区交付各块数据
+    private ObjectNode read(byte[] body, int chunkSize) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        try (GqlResponseReader reader = new GqlResponseReader(objectMapper)) {
+            for (int offset = 0; offset < body.length; offset += chunkSize) {
+                chunk.clear();
+                chunk.put(body, offset, Math.min(chunkSize, body.length - offset));
+                chunk.flip();
+                reader.feed(chunk);
+            }
+            return reader.finish();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.GqlSchema;
+import com.example.scriptparser.model.GqlTemplate;
+import com.example.scriptparser.util.HashUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GqlTemplateCompilerTest {
+
+    private static final String SCHEMA = """
+            {"__schema": {
+              "queryType": {"name": "Query"}, "mutationType": {"name": "Mutation"}, "subscriptionType": null,
+              "types": [
+                {"name": "Query", "inputFields": null, "fields": [
+                  {"name": "trip", "args": [{"name": "id", "type": {"kind": "NON_NULL", "name": null, "ofType": {"kind": "SCALAR", "name": "ID", "ofType": null}}}],
+                   "type": {"kind": "OBJECT", "name": "Trip", "ofType": null}},
+                  {"name": "trips", "args": [
+                     {"name": "ids", "type": {"kind": "LIST", "name": null, "ofType": {"kind": "NON_NULL", "name": null, "ofType": {"kind": "SCALAR", "name": "ID", "ofType": null}}}},
+                     {"name": "filter", "type": {"kind": "INPUT_OBJECT", "name": "TripFilter", "ofType": null}}],
+                   "type": {"kind": "LIST", "name": null, "ofType": {"kind": "OBJECT", "name": "Trip", "ofType": null}}}]},
+                {"name": "Mutation", "inputFields": null, "fields": [
+                  {"name": "book", "args": [
+                     {"name": "id", "type": {"kind": "NON_NULL", "name": null, "ofType": {"kind": "SCALAR", "name": "ID", "ofType": null}}},
+                     {"name": "seats", "type": {"kind": "SCALAR", "name": "Int", "ofType": null}}],
+                   "type": {"kind": "OBJECT", "name": "Trip", "ofType": null}}]},
+                {"name": "Trip", "inputFields": null, "fields": [
+                  {"name": "id", "args": [], "type": {"kind": "SCALAR", "name": "ID", "ofType": null}},
+                  {"name": "stops", "args": [{"name": "first", "type": {"kind": "SCALAR", "name": "Int", "ofType": null}}],
+                   "type": {"kind": "LIST", "name": null, "ofType": {"kind": "OBJECT", "name": "Stop", "ofType": null}}}]},
+                {"name": "Stop", "inputFields": null, "fields": [
+                  {"name": "name", "args": [], "type": {"kind": "SCALAR", "name": "String", "ofType": null}}]},
+                {"name": "TripFilter", "fields": null, "inputFields": [
+                  {"name": "from", "type": {"kind": "NON_NULL", "name": null, "ofType": {"kind": "SCALAR", "name": "String", "ofType": null}}},
+                  {"name": "date", "type": {"kind": "SCALAR", "name": "String", "ofType": null}}]}
+              ],
+              "directives": [
+                {"name": "include", "args": [{"name": "if", "type": {"kind": "NON_NULL", "name": null, "ofType": {"kind": "SCALAR", "name": "Boolean", "ofType": null}}}]}
+              ]
+            }}""";
+
+    private GqlSchema schema;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        schema = GqlSchema.fromIntrospection(new ObjectMapper().readTree(SCHEMA));
+    }
+
+    @Test
+    void placeholdersInNestedArgumentsBecomeTypedVariables() throws Exception {
+        GqlTemplate.Document document = compile(
+                "query Trip { trip(id: ${tripId}) { id stops(first: ${n}) { name } } }");
+
+        assertEquals("query Trip($tripId: ID!, $n: Int) { trip(id: $tripId) { id stops(first: $n) { name } } }",
+                document.query());
+        assertEquals(Map.of("tripId", "tripId", "n", "n"), document.variables());
+        assertEquals(HashUtil.sha256(document.query()), document.hash());
+    }
+
+    @Test
+    void shorthandQueriesGetAnOperationKeyword() throws Exception {
+        assertEquals("query($id: ID!) { trip(id: $id) { id } }", compile("{ trip(id: ${id}) { id } }").query());
+    }
+
+    @Test
+    void listAndInputObjectTypesAreInferredPerElementAndField() throws Exception {
+        GqlTemplate.Document document = compile(
+                "{ trips(ids: [${a}, ${b}], filter: {from: ${from.city}, date: \"}{$\"}) { id } }");
+
+        assertEquals("query($a: ID!, $b: ID!, $from_city: String!) "
+                + "{ trips(ids: [$a, $b], filter: {from: $from_city, date: \"}{$\"}) { id } }", document.query());
+        assertEquals("from_city", document.variables().get("from.city"));
+    }
+
+    @Test
+    void stringsWithBracesAndDollarsAreLeftAlone() throws Exception {
+        String template = "{ trip(id: \"a{b}$c\") { id } a: trip(id: \"\"\"${not} a placeholder?\"\"\") { id } }";
+        Exception e = assertThrows(Exception.class, () -> compile(template));
+        assertTrue(e.getMessage().contains("string literal"), e.getMessage());
+
+        String literal = "{ trip(id: \"a{b}$c\") { id } }";
+        assertEquals(literal, compile(literal).query());
+    }
+
+    @Test
+    void generatedNamesDoNotCollideWithDeclaredVariables() throws Exception {
+        GqlTemplate.Document document = compile(
+                "query($id: ID!) { a: trip(id: $id) { id } b: trip(id: ${id}) { id } c: trip(id: ${id}) { id } }");
+
+        assertEquals("query($id: ID!, $id_2: ID!) { a: trip(id: $id) { id } b: trip(id: $id_2) { id } "
+                + "c: trip(id: $id_2) { id } }", document.query());
+        assertEquals(Map.of("id", "id_2"), document.variables());
+    }
+
+    @Test
+    void fragmentsAndKnownDirectivesAreTyped() throws Exception {
+        GqlTemplate.Document document = compile(
+                "{ trip(id: ${id}) @include(if: ${show}) { ...Stops } } "
+                        + "fragment Stops on Trip { stops(first: ${n}) { name } }");
+
+        assertEquals("query($id: ID!, $show: Boolean!, $n: Int) { trip(id: $id) @include(if: $show) { ...Stops } } "
+                + "fragment Stops on Trip { stops(first: $n) { name } }", document.query());
+    }
+
+    @Test
+    void mutationsAreCompiled() throws Exception {
+        assertEquals("mutation($id: ID!, $seats: Int) { book(id: $id, seats: $seats) { id } }",
+                compile("mutation { book(id: ${id}, seats: ${seats}) { id } }").query());
+    }
+
+    @Test
+    void templatesWithoutPlaceholdersAreSentAsIs() throws Exception {
+        String template = "query { trips(ids: [\"T1\", \"T2\"]) { id } }";
+        GqlTemplate.Document document = compile(template);
+        assertEquals(template, document.query());
+        assertTrue(document.variables().isEmpty());
+        assertEquals(HashUtil.sha256(template), document.hash());
+    }
+
+    @Test
+    void templatesThatCannotBeTypedFallBackToSplicing() {
+        // 未知字段、未知指令、类型冲突和多个操作时抛出异常，由 ScriptService 改用拼接方式
+        assertCannotCompile("{ unknown(id: ${id}) { id } }", "cannot infer");
+        assertCannotCompile("{ trip(id: ${id}) @cached(ttl: ${ttl}) { id } }", "cannot infer");
+        assertCannotCompile("{ trip(id: ${x}) { stops(first: ${x}) { name } } }", "used as both");
+        assertCannotCompile("{ trip(id: ${id}) { id } } { trip(id: ${id}) { id } }", "exactly one operation");
+        assertCannotCompile("{ trip(id: ${id) { id } }", "malformed placeholder");
+        assertCannotCompile("{ trip(id: ${id}) { id }", "unexpected end");
+    }
+
+    private GqlTemplate.Document compile(String template) throws Exception {
+        return GqlTemplateCompiler.compile(template, schema);
+    }
+
+    private void assertCannotCompile(String template, String reason) {
+        Exception e = assertThrows(Exception.class, () -> compile(template));
+        assertTrue(String.valueOf(e.getMessage()).contains(reason), template + " -> " + e.getMessage());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.scriptparser.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonEntityProducerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesTheSameBytesAsWriteValueForAnyChannelCapacity() throws Exception {
+        ObjectNode body = body(2000);
+        byte[] expected = objectMapper.writeValueAsBytes(body);
+        for (int capacity : new int[]{1, 7, 700, JsonEntityProducer.CHUNK_SIZE, 1 << 20}) {
+            LongAdder bytesWritten = new LongAdder();
+            Channel channel = new Channel(capacity);
+            JsonEntityProducer producer = new JsonEntityProducer(objectMapper, body, () -> { }, bytesWritten);
+            channel.drain(producer);
+
+            assertArrayEquals(expected, channel.out.toByteArray(), "capacity " + capacity);
+            assertEquals(expected.length, bytesWritten.sum());
+        }
+    }
+
+    @Test
+    void keepsOnlyOneBoundedChunkInMemory() throws Exception {
+        ObjectNode body = body(20000);
+        Channel channel = new Channel(1 << 20);
+        channel.drain(new JsonEntityProducer(objectMapper, body, () -> { }, null));
+
+        // 请求体远大于一块，分多块写出，每块不超过块大小加生成器的缓冲区
+        assertTrue(channel.out.size() > 10 * JsonEntityProducer.CHUNK_SIZE);
+        assertTrue(channel.writes > 10);
+        assertTrue(channel.largestWrite <= 2 * JsonEntityProducer.CHUNK_SIZE, "largest " + channel.largestWrite);
+    }
+
+    @Test
+    void serializesAgainAfterRelease() throws Exception {
+        ObjectNode body = body(500);
+        JsonEntityProducer producer = new JsonEntityProducer(objectMapper, body, () -> { }, null);
+        Channel first = new Channel(700);
+        // 第一次写了一部分后失败，重发时从头开始
+        producer.produce(first);
+        producer.failed(new java.io.IOException("reset"));
+        Channel retry = new Channel(700);
+        retry.drain(producer);
+        assertArrayEquals(objectMapper.writeValueAsBytes(body), retry.out.toByteArray());
+    }
+
+    private ObjectNode body(int rows) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("query", "query { trips(ids: $ids) { id startStationName price } }");
+        ArrayNode ids = body.putObject("variables").putArray("ids");
+        for (int i = 0; i < rows; i++) {
+            ObjectNode row = ids.addObject();
+            row.put("id", "G" + i);
+            row.put("name", "上海虹桥\"站\"");
+            row.put("price", new BigDecimal("123.45"));
+            row.put("seats", 1L << 40);
+            row.putNull("note");
+        }
+        return body;
+    }
+
+    // 每次 produce 最多接收 capacity 字节的连接
+    private static class Channel implements DataStreamChannel {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final int capacity;
+        private int accepted;
+        boolean ended;
+        int writes;
+        int largestWrite;
+
+        Channel(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void drain(JsonEntityProducer producer) throws Exception {
+            while (!ended) {
+                accepted = 0;
+                producer.produce(this);
+            }
+            producer.releaseResources();
+        }
+
+        @Override
+        public void requestOutput() {
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            writes++;
+            largestWrite = Math.max(largestWrite, src.remaining());
+            int n = Math.min(src.remaining(), capacity - accepted);
+            byte[] bytes = new byte[n];
+            src.get(bytes);
+            out.write(bytes, 0, n);
+            accepted += n;
+            return n;
+        }
+
+        @Override
+        public void endStream() {
+            ended = true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.parser.RecursiveDescentScriptParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 压测共用的环境：StubGraphQLGateway 按给定延迟响应，一个依次发送两个查询的脚本，
+ * 以及统计耗时、峰值线程数和堆占用的 run。各压测只决定执行在哪些线程上进行。
+ */
+class LoadTestHarness implements AutoCloseable {
+
+    // Tomcat 默认 server.tomcat.threads.max
+    static final int TOMCAT_MAX_THREADS = 200;
+
+    private static final String SCRIPT = ""
+            + "new trip = gql query {getTrip}\n"
+            + "new returnTrip = gql query {getReturnTrip}\n"
+            + "output result.trip = trip\n"
+            + "output result.returnTrip = returnTrip\n";
+
+    private final StubGraphQLGateway gateway = new StubGraphQLGateway();
+    private final ExecutionService executionService = new ExecutionService();
+    private final GatewayClient gatewayClient;
+
+    /**
+     * @param maxConnections 网关连接池上限，按并发执行数设置，连接池不应成为瓶颈
+     */
+    LoadTestHarness(long latencyMillis, int maxConnections) throws Exception {
+        String endpoint = gateway.start();
+        gateway.setLatencyMillis(latencyMillis);
+
+        ScriptService scriptService = new ScriptService();
+        ReflectionTestUtils.setField(scriptService, "scriptParser", new RecursiveDescentScriptParser());
+        scriptService.updateGqlpScripts(Map.of("load", SCRIPT));
+        scriptService.updateGqlpkQueries(Map.of(
+                "getTrip", "query { trip(id: ${tripId}) { id } }",
+                "getReturnTrip", "query { back: trip(id: ${tripId}) { id } }"));
+
+        ReflectionTestUtils.setField(executionService, "scriptService", scriptService);
+        gatewayClient = new GatewayClient(GatewayClient.Settings.defaults(endpoint).withMaxConnections(maxConnections));
+        ReflectionTestUtils.setField(executionService, "gatewayClient", gatewayClient);
+        ReflectionTestUtils.setField(executionService, "executionMode", "sequential");
+    }
+
+    /**
+     * 供压测设置执行方式相关的字段
+     */
+    ExecutionService getExecutionService() {
+        return executionService;
+    }
+
+    /**
+     * 与 Tomcat 相同，在 executor 的一个线程上阻塞执行脚本直到结束
+     */
+    CompletableFuture<JsonNode> executeOn(Executor executor, String tripId) {
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(executionService.executeScript("load", Map.of("tripId", tripId)));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 同时发起 executions 个执行并等待全部结束，校验每个执行都拿到了自己的结果
+     *
+     * @param execute 按 tripId 发起一个执行
+     */
+    Result run(int executions, Function<String, CompletableFuture<JsonNode>> execute) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<JsonNode>> futures = new ArrayList<>(executions);
+        for (int i = 0; i < executions; i++) {
+            futures.add(execute.apply("T" + i));
+        }
+        for (int i = 0; i < executions; i++) {
+            JsonNode result = futures.get(i).get(60, TimeUnit.SECONDS);
+            assertEquals("T" + i, result.path("back").path("id").asText());
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        long heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+        return new Result(executions, elapsedMillis, threads.getPeakThreadCount(), heapMb);
+    }
+
+    @Override
+    public void close() {
+        gatewayClient.close();
+        gateway.stop();
+    }
+
+    record Result(int executions, long elapsedMillis, int peakThreads, long heapMb) {
+
+        double throughput() {
+            return executions * 1000.0 / Math.max(1, elapsedMillis);
+        }
+
+        void print(String label) {
+            System.out.printf("%-20s %d ms, %.0f req/s, peak threads %d, heap %d MB%n",
+                    label + ":", elapsedMillis, throughput(), peakThreads, heapMb);
+        }
+    }
+}
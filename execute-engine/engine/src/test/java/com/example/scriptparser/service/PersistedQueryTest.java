@@ -0,0 +1,135 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.model.GqlSchema;
+import com.example.scriptparser.model.GqlTemplate;
+import com.example.scriptparser.parser.RecursiveDescentScriptParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistedQueryTest {
+
+    private static final String SCRIPT = ""
+            + "new trip = gql query {getTrip}\n"
+            + "output result.trip = trip\n";
+
+    // 查询全文比APQ的哈希扩展长时才按哈希发送
+    private static final String TRIP_QUERY = "query { trip(id: ${tripId}) "
+            + "{ id tripId trainTypeName startStationName terminalStationName startTime endTime } }";
+
+    private StubGraphQLGateway gateway;
+    private ScriptService scriptService;
+    private ExecutionService executionService;
+    private GatewayClient gatewayClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        gateway = new StubGraphQLGateway();
+        String endpoint = gateway.start();
+
+        scriptService = new ScriptService();
+        ReflectionTestUtils.setField(scriptService, "scriptParser", new RecursiveDescentScriptParser());
+        scriptService.updateGqlpScripts(Map.of("trip", SCRIPT));
+
+        executionService = new ExecutionService();
+        ReflectionTestUtils.setField(executionService, "scriptService", scriptService);
+        gatewayClient = new GatewayClient(GatewayClient.Settings.defaults(endpoint));
+        ReflectionTestUtils.setField(executionService, "gatewayClient", gatewayClient);
+        ReflectionTestUtils.setField(executionService, "executionMode", "sequential");
+        ReflectionTestUtils.setField(executionService, "gqlVariablesEnabled", true);
+        ReflectionTestUtils.setField(executionService, "gqlApqEnabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gatewayClient.close();
+        gateway.stop();
+    }
+
+    @Test
+    void registeredQueriesAreSentByHash() throws Exception {
+        GqlTemplate template = upload(TRIP_QUERY);
+        assertNotNull(template.getDocument());
+        assertTrue(gateway.isPersisted(template.getDocument().query()));
+
+        int before = gateway.getRequests();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("T" + i, execute("T" + i).path("trip").path("id").asText());
+        }
+        assertEquals(3, gateway.getRequests() - before);
+        assertEquals(3, gateway.getHashOnlyRequests());
+        assertEquals(0, gateway.getNotFound());
+        Map<String, Object> apq = apqStats();
+        assertEquals(3L, apq.get("hits"));
+        assertTrue((Long) apq.get("bytesSaved") > 0);
+    }
+
+    @Test
+    void unknownHashFallsBackToFullText() throws Exception {
+        upload(TRIP_QUERY);
+        gateway.forgetPersistedQueries();
+
+        int before = gateway.getRequests();
+        assertEquals("A", execute("A").path("trip").path("id").asText());
+        // 只带哈希的请求未命中，带全文重发一次，网关同时重新保存
+        assertEquals(2, gateway.getRequests() - before);
+        assertEquals(1, gateway.getNotFound());
+
+        assertEquals("B", execute("B").path("trip").path("id").asText());
+        assertEquals(3, gateway.getRequests() - before);
+        assertEquals(1L, apqStats().get("misses"));
+        assertEquals(1L, apqStats().get("hits"));
+    }
+
+    @Test
+    void splicedTemplatesSendFullText() throws Exception {
+        ReflectionTestUtils.setField(executionService, "gqlVariablesEnabled", false);
+        assertNull(executionService.fetchGatewaySchema());
+        Set<String> keys = scriptService.updateGqlpkQueries(Map.of("getTrip", TRIP_QUERY));
+        executionService.registerPersistedQueries(keys);
+        assertNull(scriptService.getGqlpkQuery("getTrip").getDocument());
+
+        assertEquals("C", execute("C").path("trip").path("id").asText());
+        assertEquals(0, gateway.getHashOnlyRequests());
+        assertFalse((Long) apqStats().get("hits") > 0);
+    }
+
+    @Test
+    void missingVariableFailsInsteadOfSendingNull() {
+        upload(TRIP_QUERY);
+
+        int before = gateway.getRequests();
+        Exception e = assertThrows(Exception.class, () -> executionService.executeScript("trip", Map.of()));
+        assertTrue(String.valueOf(e.getMessage()).contains("Variable not found: tripId"), e.getMessage());
+        assertEquals(0, gateway.getRequests() - before);
+    }
+
+    private GqlTemplate upload(String query) {
+        GqlSchema schema = executionService.fetchGatewaySchema();
+        assertNotNull(schema);
+        Set<String> keys = scriptService.updateGqlpkQueries(Map.of("getTrip", query), schema);
+        executionService.registerPersistedQueries(keys);
+        return scriptService.getGqlpkQuery("getTrip");
+    }
+
+    private JsonNode execute(String tripId) throws Exception {
+        return executionService.executeScript("trip", Map.of("tripId", tripId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> apqStats() {
+        return (Map<String, Object>) executionService.getGqlStats().get("apq");
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.scriptparser.service;
+
+import com.example.api.HandlerService;
+import com.example.scriptparser.util.HashUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pf4j.DefaultPluginManager;
+import org.pf4j.PluginState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 插件各代的固定、排空和卸载。jar的内容决定模拟的插件的行为，每次加载都记录创建的 PluginManager，
+ * 通过它是否被卸载检查插件的引用计数。
+ */
+class PluginServiceReloadTest {
+
+    // 启动时被 PF4J 标记为 FAILED 的jar
+    private static final String FAILED_TO_START = "failed";
+    // 没有提供任何处理器的jar
+    private static final String NO_HANDLERS = "empty";
+
+    private final List<FakePluginManager> managers = new CopyOnWriteArrayList<>();
+    private Path pluginsRoot;
+    private PluginService pluginService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pluginsRoot = Files.createTempDirectory("plugins");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (pluginService != null) {
+            pluginService.close();
+        }
+        try (Stream<Path> files = Files.walk(pluginsRoot)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void changedJarUnloadsAfterLastPinnedExecutionReleases() throws Exception {
+        Path jar = writeJar("p", "v1");
+        pluginService = start();
+        FakePluginManager v1 = managers.get(0);
+
+        // 两个执行固定在第一代上
+        PluginGeneration first = pluginService.acquire();
+        PluginGeneration second = pluginService.acquire();
+        assertSame(first, second);
+
+        writeJar("p", "v2");
+        PluginService.ReloadResult result = pluginService.reload();
+        assertEquals(List.of("p"), result.changed());
+        assertEquals(2, managers.size());
+        FakePluginManager v2 = managers.get(1);
+
+        // 新的执行使用新的一代
+        PluginGeneration next = pluginService.acquire();
+        assertTrue(next.getNumber() > first.getNumber());
+        assertEquals(HashUtil.sha256(jar), next.getPlugins().get(0).getChecksum());
+        next.release();
+
+        first.release();
+        assertFalse(v1.awaitUnloaded(200), "还有执行固定在旧的一代上，旧版本不应卸载");
+        second.release();
+        assertTrue(v1.awaitUnloaded(5000), "最后一个执行结束后旧版本应卸载");
+        assertFalse(v2.isUnloaded());
+        awaitNoDraining();
+    }
+
+    @Test
+    void unchangedPluginsSurviveTwoReloads() throws Exception {
+        writeJar("a", "v1");
+        writeJar("b", "v1");
+        pluginService = start();
+        FakePluginManager a = managers.get(0);
+        FakePluginManager b1 = managers.get(1);
+
+        writeJar("b", "v2");
+        assertEquals(List.of("b"), pluginService.reload().changed());
+        writeJar("b", "v3");
+        assertEquals(List.of("b"), pluginService.reload().changed());
+
+        assertEquals(4, managers.size());
+        FakePluginManager b2 = managers.get(2);
+        FakePluginManager b3 = managers.get(3);
+        assertTrue(b1.awaitUnloaded(5000));
+        assertTrue(b2.awaitUnloaded(5000));
+        awaitNoDraining();
+        // 未变化的插件只加载了一次，在三代之间共享，没有被卸载
+        assertFalse(a.isUnloaded());
+        assertFalse(b3.isUnloaded());
+        assertEquals(4L, pluginService.getStats().get("pluginLoads"));
+        assertEquals(List.of("a:echo", "b:echo"), pluginService.getCurrent().getRegistry().getQualifiedNames());
+    }
+
+    @Test
+    void reloadWithoutChangesCreatesNoGenerationAndLeaksNoReferences() throws Exception {
+        writeJar("p", "v1");
+        pluginService = start();
+        FakePluginManager v1 = managers.get(0);
+        PluginGeneration generation = pluginService.getCurrent();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pluginService.reload().isEmpty());
+            assertSame(generation, pluginService.getCurrent());
+        }
+        assertEquals(1, managers.size());
+
+        // 没有变化的重载撤销了对插件的引用，更新后旧版本在排空时即可卸载
+        writeJar("p", "v2");
+        assertEquals(List.of("p"), pluginService.reload().changed());
+        assertTrue(v1.awaitUnloaded(5000), "没有变化的重载不应留下对插件的引用");
+        awaitNoDraining();
+    }
+
+    @Test
+    void pluginThatFailsToStartIsUnloadedAndOldVersionKept() throws Exception {
+        writeJar("p", "v1");
+        pluginService = start();
+        PluginGeneration generation = pluginService.getCurrent();
+
+        writeJar("p", FAILED_TO_START);
+        PluginService.ReloadResult result = pluginService.reload();
+        assertEquals(1, result.failed().size());
+        assertTrue(result.changed().isEmpty());
+        assertTrue(managers.get(1).isUnloaded(), "启动失败的插件应立即卸载");
+        assertSame(generation, pluginService.getCurrent());
+        assertFalse(managers.get(0).isUnloaded());
+    }
+
+    @Test
+    void pluginWithoutHandlersIsRejected() throws Exception {
+        writeJar("p", "v1");
+        pluginService = start();
+
+        writeJar("p", NO_HANDLERS);
+        PluginService.ReloadResult result = pluginService.reload();
+        assertEquals(1, result.failed().size());
+        assertTrue(managers.get(1).isUnloaded());
+        assertEquals(List.of("p:echo"), pluginService.getCurrent().getRegistry().getQualifiedNames());
+    }
+
+    @Test
+    void removedPluginBulkheadIsShutDownAfterDraining() throws Exception {
+        writeJar("a", "v1");
+        Path b = writeJar("b", "v1");
+        pluginService = start(id -> new PluginBulkhead.Settings(2, 0, 0));
+        PluginGeneration pinned = pluginService.acquire();
+        PluginFunction removed = pinned.getRegistry().find("b:echo", "echo");
+
+        Files.delete(b);
+        assertEquals(List.of("b"), pluginService.reload().removed());
+        assertEquals(Set.of("a"), bulkheads().keySet());
+
+        // 固定在旧的一代上的执行仍可调用已移除的插件
+        assertEquals("v1", removed.bulkhead().call(() -> "v1"));
+        pinned.release();
+        awaitNoDraining();
+        assertThrows(Exception.class, () -> removed.bulkhead().call(() -> "v1"));
+
+        // 同ID的插件重新加入时使用新的线程池
+        writeJar("b", "v2");
+        assertEquals(List.of("b"), pluginService.reload().added());
+        PluginFunction readded = pluginService.getCurrent().getRegistry().find("b:echo", "echo");
+        assertEquals("v2", readded.bulkhead().call(() -> "v2"));
+        assertEquals(Set.of("a", "b"), bulkheads().keySet());
+    }
+
+    private PluginService start() {
+        return start(null);
+    }
+
+    private PluginService start(Function<String, PluginBulkhead.Settings> bulkheadSettings) {
+        return new PluginService(pluginsRoot, () -> {
+            FakePluginManager manager = new FakePluginManager();
+            managers.add(manager);
+            return manager;
+        }, bulkheadSettings, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> bulkheads() {
+        return (Map<String, Object>) pluginService.getStats().get("bulkheads");
+    }
+
+    private Path writeJar(String pluginId, String content) throws IOException {
+        return Files.writeString(pluginsRoot.resolve(pluginId + ".jar"), content);
+    }
+
+    // 旧的一代在后台卸载，等它从排空列表中移除
+    private void awaitNoDraining() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!((List<?>) pluginService.getStats().get("draining")).isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "旧的一代没有排空");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 不读取jar，插件ID为文件名，按文件内容模拟启动失败或不提供处理器。
+     */
+    private static class FakePluginManager extends DefaultPluginManager {
+
+        private final CountDownLatch unloaded = new CountDownLatch(1);
+        private String content;
+
+        @Override
+        public String loadPlugin(Path pluginPath) {
+            try {
+                content = Files.readString(pluginPath);
+            } catch (IOException e) {
+                return null;
+            }
+            return pluginPath.getFileName().toString().replace(".jar", "");
+        }
+
+        @Override
+        public PluginState startPlugin(String pluginId) {
+            return FAILED_TO_START.equals(content) ? PluginState.FAILED : PluginState.STARTED;
+        }
+
+        @Override
+        public PluginState stopPlugin(String pluginId) {
+            return PluginState.STOPPED;
+        }
+
+        @Override
+        public boolean unloadPlugin(String pluginId) {
+            unloaded.countDown();
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> getExtensions(Class<T> type, String pluginId) {
+            if (type == HandlerService.class && !NO_HANDLERS.equals(content)) {
+                return (List<T>) List.of(new EchoHandler(content));
+            }
+            return List.of();
+        }
+
+        boolean isUnloaded() {
+            return unloaded.getCount() == 0;
+        }
+
+        boolean awaitUnloaded(long millis) throws InterruptedException {
+            return unloaded.await(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private record EchoHandler(String version) implements HandlerService {
+
+        @Override
+        public String getName() {
+            return "echo";
+        }
+
+        @Override
+        public JsonNode handle(JsonNode input) {
+            return TextNode.valueOf(version);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.service.LoadTestHarness.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.example.scriptparser.service.LoadTestHarness.TOMCAT_MAX_THREADS;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模拟网关延迟，对比 Tomcat 默认的200个线程阻塞执行与响应式执行在5000个并发执行下的吞吐和线程占用。
+ * 运行: mvn test -Dtest=ReactiveLoadTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ReactiveLoadTest {
+
+    private static final int CONCURRENT_EXECUTIONS = 5000;
+    // 延迟足够长，核数少的机器上结果仍由等待网关而不是CPU决定
+    private static final long GATEWAY_LATENCY_MILLIS = 200;
+
+    private LoadTestHarness harness;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        harness = new LoadTestHarness(GATEWAY_LATENCY_MILLIS, CONCURRENT_EXECUTIONS);
+        ReflectionTestUtils.setField(harness.getExecutionService(), "blockingScheduler", Schedulers.boundedElastic());
+    }
+
+    @AfterEach
+    void tearDown() {
+        harness.close();
+    }
+
+    @Test
+    void reactiveScalesPastTomcatPool() throws Exception {
+        // 预热连接和JIT
+        runServlet(TOMCAT_MAX_THREADS);
+        runReactive(TOMCAT_MAX_THREADS);
+
+        Result servlet = runServlet(CONCURRENT_EXECUTIONS);
+        Result reactive = runReactive(CONCURRENT_EXECUTIONS);
+        servlet.print("servlet pool(" + TOMCAT_MAX_THREADS + ")");
+        reactive.print("reactive");
+
+        // 线程池最多同时等待200个执行，响应式执行的并发度只受执行数限制
+        assertTrue(reactive.throughput() > servlet.throughput() * 2,
+                "reactive execution should scale past the servlet pool");
+        // 等待网关响应时不占用线程，线程数不随并发执行增长
+        assertTrue(reactive.peakThreads() < servlet.peakThreads(),
+                "reactive execution should not need a thread per execution");
+    }
+
+    // 与 Tomcat 相同，每个执行占用池中的一个线程直到结束
+    private Result runServlet(int executions) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        try {
+            return harness.run(executions, tripId -> harness.executeOn(executor, tripId));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // 全部执行在一个线程上订阅，之后的语句在网关响应的回调线程上继续
+    private Result runReactive(int executions) throws Exception {
+        ExecutionService executionService = harness.getExecutionService();
+        return harness.run(executions,
+                tripId -> executionService.executeScriptReactive("load", Map.of("tripId", tripId)).toFuture());
+    }
+}
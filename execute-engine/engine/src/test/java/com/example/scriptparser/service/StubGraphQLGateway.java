@@ -0,0 +1,166 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.util.HashUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 离线测试用的GraphQL网关，只实现 trip(id: ID!): Trip 一个字段，支持内省和APQ协议：
+ * 只带哈希的请求按已保存的查询执行，未保存时返回 PersistedQueryNotFound；同时带全文和哈希时校验并保存。
+ */
+class StubGraphQLGateway {
+
+    private static final Pattern TRIP_FIELD = Pattern.compile("(?:(\\w+)\\s*:\\s*)?trip\\(id:\\s*(?:\\$(\\w+)|\"([^\"]*)\")\\)");
+
+    private static final String SCHEMA = """
+            {"__schema": {
+              "queryType": {"name": "Query"}, "mutationType": null, "subscriptionType": null,
+              "types": [
+                {"name": "Query", "inputFields": null, "fields": [
+                  {"name": "trip", "args": [{"name": "id", "type": {"kind": "NON_NULL", "name": null, "ofType": {"kind": "SCALAR", "name": "ID", "ofType": null}}}],
+                   "type": {"kind": "OBJECT", "name": "Trip", "ofType": null}}]},
+                {"name": "Trip", "inputFields": null, "fields": [
+                  {"name": "id", "args": [], "type": {"kind": "SCALAR", "name": "ID", "ofType": null}}]}
+              ],
+              "directives": []
+            }}""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> persistedQueries = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger hashOnlyRequests = new AtomicInteger();
+    private final AtomicInteger notFound = new AtomicInteger();
+    // 每个请求返回前等待的时间，让并发的调用方在第一个请求返回前到达
+    private volatile long latencyMillis;
+    private HttpServer server;
+    private ExecutorService handlers;
+    // 延迟由定时线程池完成响应，等待期间不为每个请求占用线程，压测时网关本身不是瓶颈
+    private ScheduledExecutorService delay;
+
+    String start() throws IOException {
+        handlers = Executors.newFixedThreadPool(4);
+        delay = Executors.newScheduledThreadPool(4);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 8192);
+        server.setExecutor(handlers);
+        server.createContext("/graphql", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            byte[] response = handle(body).getBytes(StandardCharsets.UTF_8);
+            Runnable respond = () -> {
+                try {
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, response.length);
+                    exchange.getResponseBody().write(response);
+                } catch (IOException e) {
+                    System.err.println("Stub gateway failed to respond: " + e.getMessage());
+                } finally {
+                    exchange.close();
+                }
+            };
+            long latency = latencyMillis;
+            if (latency > 0) {
+                delay.schedule(respond, latency, TimeUnit.MILLISECONDS);
+            } else {
+                respond.run();
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/graphql";
+    }
+
+    void stop() {
+        server.stop(0);
+        delay.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    String handle(String body) throws IOException {
+        requests.incrementAndGet();
+        JsonNode request = objectMapper.readTree(body);
+        String query = request.hasNonNull("query") ? request.get("query").asText() : null;
+        String hash = request.path("extensions").path("persistedQuery").path("sha256Hash").asText(null);
+        if (hash != null) {
+            if (query == null) {
+                hashOnlyRequests.incrementAndGet();
+                query = persistedQueries.get(hash);
+                if (query == null) {
+                    notFound.incrementAndGet();
+                    return "{\"errors\":[{\"message\":\"PersistedQueryNotFound\","
+                            + "\"extensions\":{\"code\":\"PERSISTED_QUERY_NOT_FOUND\"}}]}";
+                }
+            } else if (!hash.equals(HashUtil.sha256(query))) {
+                return "{\"errors\":[{\"message\":\"provided sha does not match query\"}]}";
+            } else {
+                persistedQueries.put(hash, query);
+            }
+        }
+        if (query == null) {
+            return "{\"errors\":[{\"message\":\"Must provide query string.\"}]}";
+        }
+        if (query.contains("__schema")) {
+            return "{\"data\":" + SCHEMA + "}";
+        }
+        return execute(query, request.path("variables"));
+    }
+
+    private String execute(String query, JsonNode variables) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode data = objectMapper.createObjectNode();
+        Matcher matcher = TRIP_FIELD.matcher(query);
+        while (matcher.find()) {
+            String id = matcher.group(3);
+            if (matcher.group(2) != null) {
+                JsonNode value = variables.get(matcher.group(2));
+                if (value == null || value.isNull()) {
+                    response.putArray("errors").addObject()
+                            .put("message", "Variable \"$" + matcher.group(2) + "\" of required type \"ID!\" was not provided.");
+                    response.putNull("data");
+                    return response.toString();
+                }
+                id = value.asText();
+            }
+            String responseKey = matcher.group(1) != null ? matcher.group(1) : "trip";
+            data.putObject(responseKey).put("id", id);
+        }
+        response.set("data", data);
+        return response.toString();
+    }
+
+    boolean isPersisted(String query) {
+        return persistedQueries.containsKey(HashUtil.sha256(query));
+    }
+
+    void forgetPersistedQueries() {
+        persistedQueries.clear();
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    int getHashOnlyRequests() {
+        return hashOnlyRequests.get();
+    }
+
+    int getNotFound() {
+        return notFound.get();
+    }
+}
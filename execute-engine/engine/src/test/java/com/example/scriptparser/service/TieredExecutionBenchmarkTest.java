@@ -0,0 +1,63 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.parser.RecursiveDescentScriptParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 对比解释器与编译层执行同一脚本的耗时，脚本只包含不访问网关和插件的语句。
+ * 运行: mvn test -Dtest=TieredExecutionBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TieredExecutionBenchmarkTest {
+
+    private static final String SCRIPT = ""
+            + "int i = 1000\n"
+            + "int total = 0\n"
+            + "def flag = true\n"
+            + "while (i) {\n"
+            + "    cal i = i - 1\n"
+            + "    cal total = total + 3\n"
+            + "    if (flag) { set last = 1.5; cal total = total - 1 }\n"
+            + "}\n"
+            + "output result.total = total\n";
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 5000;
+
+    @Test
+    void compareTiers() throws Exception {
+        long interpreted = run(false);
+        long compiled = run(true);
+        System.out.printf("interpreter: %d ns/exec, compiled: %d ns/exec%n", interpreted, compiled);
+    }
+
+    private long run(boolean tiered) throws Exception {
+        ScriptService scriptService = new ScriptService();
+        ReflectionTestUtils.setField(scriptService, "scriptParser", new RecursiveDescentScriptParser());
+        scriptService.updateGqlpScripts(Map.of("bench", SCRIPT));
+
+        ExecutionService executionService = new ExecutionService();
+        ReflectionTestUtils.setField(executionService, "scriptService", scriptService);
+        ReflectionTestUtils.setField(executionService, "tieredEnabled", tiered);
+        ReflectionTestUtils.setField(executionService, "compileThreshold", 1);
+
+        for (int i = 0; i < WARMUP; i++) {
+            executionService.executeScript("bench", Map.of());
+        }
+        long start = System.nanoTime();
+        JsonNode result = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            result = executionService.executeScript("bench", Map.of());
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(2000, result.asInt());
+        return elapsed / ITERATIONS;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.scriptparser.service;
+
+import com.example.scriptparser.service.LoadTestHarness.Result;
+import com.example.scriptparser.util.VirtualThreads;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.example.scriptparser.service.LoadTestHarness.TOMCAT_MAX_THREADS;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模拟网关延迟，对比 Tomcat 默认的200个平台线程与每请求一个虚拟线程时的并发吞吐和线程占用。
+ * 运行: mvn test -P java21 -Dtest=VirtualThreadLoadTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadLoadTest {
+
+    private static final int CONCURRENT_REQUESTS = 2000;
+    private static final long GATEWAY_LATENCY_MILLIS = 50;
+
+    private LoadTestHarness harness;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        harness = new LoadTestHarness(GATEWAY_LATENCY_MILLIS, CONCURRENT_REQUESTS);
+        ExecutionService executionService = harness.getExecutionService();
+        ReflectionTestUtils.setField(executionService, "tieredEnabled", true);
+        ReflectionTestUtils.setField(executionService, "compileThreshold", 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        harness.close();
+    }
+
+    @Test
+    void virtualThreadsScalePastTomcatPool() throws Exception {
+        // 预热连接和JIT
+        run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), TOMCAT_MAX_THREADS);
+
+        Result platform = run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), CONCURRENT_REQUESTS);
+        Result virtual = run(VirtualThreads.newPerTaskExecutor(), CONCURRENT_REQUESTS);
+        platform.print("platform pool(" + TOMCAT_MAX_THREADS + ")");
+        virtual.print("virtual threads");
+
+        // 固定线程池最多同时阻塞200个请求，虚拟线程下并发度只受请求数限制
+        assertTrue(virtual.throughput() > platform.throughput() * 2,
+                "virtual threads should scale past the fixed pool");
+        // 虚拟线程由少量载体线程承载，平台线程数不随并发请求增长
+        assertTrue(virtual.peakThreads() <= platform.peakThreads(),
+                "virtual threads should not need more platform threads");
+    }
+
+    private Result run(ExecutorService executor, int requests) throws Exception {
+        try {
+            return harness.run(requests, tripId -> harness.executeOn(executor, tripId));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.scriptparser.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InFlightCoalescerTest {
+
+    private static final int FOLLOWERS = 6;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final InFlightCoalescer<String, JsonNode> coalescer = new InFlightCoalescer<>(JsonNode::deepCopy);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void uncoalescedCallerGetsTheResultWithoutCopy() throws Exception {
+        ObjectNode response = response();
+        assertSame(response, coalescer.execute("k", () -> response));
+        assertSame(response, coalescer.executeAsync("k", () -> CompletableFuture.completedFuture(response))
+                .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void coalescedCallersEachGetTheirOwnCopy() throws Exception {
+        ObjectNode response = response();
+        List<Future<JsonNode>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> coalescer.execute("k", () -> {
+            release.await(5, TimeUnit.SECONDS);
+            return response;
+        })));
+        awaitInFlight();
+        // 同步和异步的调用方混合合并
+        for (int i = 0; i < FOLLOWERS; i++) {
+            if (i % 2 == 0) {
+                futures.add(executor.submit(() -> coalescer.execute("k", () -> response())));
+            } else {
+                futures.add(coalescer.executeAsync("k", () -> CompletableFuture.completedFuture(response())));
+            }
+        }
+        awaitCollapsed(FOLLOWERS);
+        release.countDown();
+
+        Map<JsonNode, Boolean> distinct = new IdentityHashMap<>();
+        for (Future<JsonNode> future : futures) {
+            JsonNode result = future.get(5, TimeUnit.SECONDS);
+            assertEquals(response(), result);
+            distinct.put(result, true);
+        }
+        // 包括第一个调用方在内，没有调用方拿到共享的那棵树
+        assertEquals(FOLLOWERS + 1, distinct.size());
+        assertFalse(distinct.containsKey(response));
+
+        // 修改一个调用方的结果不影响其他调用方
+        ((ObjectNode) futures.get(0).get().path("data")).put("trip", "changed");
+        assertEquals(response(), futures.get(1).get());
+        assertEquals(1L, coalescer.getStats().get("calls"));
+    }
+
+    private ObjectNode response() {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode trip = response.putObject("data").putObject("trip");
+        trip.put("id", "T1");
+        trip.putArray("seats").add(1).add(2);
+        return response;
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((int) coalescer.getStats().get("inFlight") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitCollapsed(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((long) coalescer.getStats().get("collapsed") < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.scriptparser.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedBatcherTest {
+
+    private static final int FOLLOWERS = 8;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    // 第一个调用直接执行，在函数内等到其余调用都已提交，保证它们聚成一批
+    private final CountDownLatch firstCallRunning = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstCall = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        releaseFirstCall.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallsShareOneBatchAndGetTheirOwnResults() throws Exception {
+        KeyedBatcher<String, Integer, String> batcher = new KeyedBatcher<>((key, items) -> {
+            awaitRelease(items);
+            List<String> results = new ArrayList<>();
+            for (int item : items) {
+                results.add(key + ":" + item * 10);
+            }
+            return results;
+        });
+
+        List<Future<String>> futures = submitAll(batcher);
+
+        for (int i = 0; i <= FOLLOWERS; i++) {
+            assertEquals("k:" + i * 10, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        // 第一个调用单独执行，其余的在批次满时一起执行
+        assertEquals(2, batches.size());
+        assertEquals(List.of(0), batches.get(0));
+        Set<Integer> batched = new HashSet<>(batches.get(1));
+        assertEquals(FOLLOWERS, batches.get(1).size());
+        for (int i = 1; i <= FOLLOWERS; i++) {
+            assertTrue(batched.contains(i));
+        }
+        assertEquals(1L, batcher.getStats().get("directCalls"));
+        assertEquals(1L, batcher.getStats().get("batches"));
+        assertEquals(0, batcher.getStats().get("activeKeys"));
+    }
+
+    @Test
+    void batchFailureReachesEveryCaller() throws Exception {
+        KeyedBatcher<String, Integer, String> batcher = new KeyedBatcher<>((key, items) -> {
+            awaitRelease(items);
+            if (items.size() > 1) {
+                throw new IllegalStateException("batch failed");
+            }
+            return List.of("ok");
+        });
+
+        List<Future<String>> futures = submitAll(batcher);
+
+        assertEquals("ok", futures.get(0).get(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= FOLLOWERS; i++) {
+            Future<String> future = futures.get(i);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("batch failed", e.getCause().getMessage());
+        }
+        assertEquals(0, batcher.getStats().get("activeKeys"));
+    }
+
+    @Test
+    void idleKeysAreNotRetained() throws Exception {
+        KeyedBatcher<String, Integer, Integer> batcher = new KeyedBatcher<>((key, items) -> items);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), batcher.execute("key-" + i, i, WINDOW_NANOS, FOLLOWERS));
+        }
+        assertEquals(100L, batcher.getStats().get("directCalls"));
+        assertEquals(0, batcher.getStats().get("activeKeys"));
+    }
+
+    // 先提交第一个调用并等它进入函数，再提交其余调用；批次满时由发起者执行，不等待时间窗口结束。
+    // 其余调用全部完成后才放行第一个调用，否则后到的调用可能因为没有进行中的调用而直接执行
+    private List<Future<String>> submitAll(KeyedBatcher<String, Integer, String> batcher) throws Exception {
+        List<Future<String>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> batcher.execute("k", 0, WINDOW_NANOS, FOLLOWERS)));
+        assertTrue(firstCallRunning.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= FOLLOWERS; i++) {
+            int item = i;
+            futures.add(executor.submit(() -> batcher.execute("k", item, WINDOW_NANOS, FOLLOWERS)));
+        }
+        for (int i = 1; i <= FOLLOWERS; i++) {
+            try {
+                futures.get(i).get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException ignored) {
+                // 由调用方检查
+            }
+        }
+        releaseFirstCall.countDown();
+        return futures;
+    }
+
+    private void awaitRelease(List<Integer> items) throws InterruptedException {
+        batches.add(List.copyOf(items));
+        if (items.equals(List.of(0))) {
+            firstCallRunning.countDown();
+            assertTrue(releaseFirstCall.await(5, TimeUnit.SECONDS));
+        }
+    }
+}